@@ -0,0 +1,184 @@
+package fbrec.bench;
+
+import fbrec.tagging.FbConnector.FbFriend;
+import fbrec.util.FriendsTokenFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.util.CharArraySet;
+import org.apache.lucene.analysis.util.FilteringTokenFilter;
+
+/**
+ * Compares the friend name filtering of the text module with a linear filter
+ * comparing every token with the first and last name of every friend, like the
+ * former implementation did for first names. Tokens are taken from memory, so
+ * only the filter is measured. Some tokens are names of friends, like in real
+ * posts. For the set based filter the time to collect the names of a profile
+ * is printed separately. The syllables of the generated names contain no
+ * umlaut spellings (ae, oe, ue), so both filters remove the same tokens.
+ * The linear filter needs seconds per run for thousands of friends, so it is
+ * run at most MAX_LINEAR_ITERATIONS times.
+ *
+ * Usage: FriendsFilterBenchmark [friends,...] [tokens] [iterations]
+ * e.g. FriendsFilterBenchmark 100,1000,5000 10000 20
+ * @author Daniel
+ */
+public class FriendsFilterBenchmark {
+    private static final String[]   SYLLABLES   = {"an", "ben", "chri", "da", "il", "fe", "ga", "hei", "jo", "ka", "lu",
+                                                   "ma", "nik", "o", "pe", "ri", "sa", "ste", "tho", "ul", "ve", "wer"};
+    private static final double     NAME_RATIO  = 0.05;                         //fraction of tokens which are names of friends
+    private static final int        MAX_LINEAR_ITERATIONS = 3;                  //runs of the former filter, it compares each token with every friend
+
+    private final List<FbFriend>    friends;
+    private final String[]          tokens;                                     //lower case tokens of the posts
+
+    public static void main(String[] args) throws Exception {
+        String  friendList = args.length > 0 ? args[0] : "100,1000,5000";
+        int     numTokens  = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        int     iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        System.out.println("filter\tfriends\ttokens\titerations\tmean(ms)\ttokens/s\tremoved");
+        for(String s : friendList.split(",")){
+            int                    numFriends = Integer.parseInt(s.trim());
+            FriendsFilterBenchmark bench      = new FriendsFilterBenchmark(numFriends, numTokens, new Random(42));
+
+            //names are collected once per profile
+            long[] build = new long[iterations];
+            for(int i = 0; i < iterations; i++){
+                long start = System.nanoTime();
+                FriendsTokenFilter.names(bench.friends);
+                build[i] = System.nanoTime() - start;
+            }
+            System.out.println("names-set\t"+numFriends+"\t-\t"+iterations+"\t"+(mean(build)/1000000.0)+"\t-\t-");
+
+            CharArraySet names = FriendsTokenFilter.names(bench.friends);
+            for(String filter : Arrays.asList("linear", "set")){
+                int    runs    = filter.equals("linear") ? Math.min(iterations, MAX_LINEAR_ITERATIONS) : iterations;
+                bench.run(filter, names, Math.max(runs / 10, 1));               //warm up
+                long[] time    = new long[runs];
+                int    removed = 0;
+                for(int i = 0; i < runs; i++){
+                    long start = System.nanoTime();
+                    removed = numTokens - bench.run(filter, names, 1);
+                    time[i] = System.nanoTime() - start;
+                }
+                System.out.println(filter+"\t"+numFriends+"\t"+numTokens+"\t"+runs
+                        +"\t"+(mean(time)/1000000.0)
+                        +"\t"+(mean(time) > 0 ? numTokens * 1000000000L / mean(time) : 0)
+                        +"\t"+removed);
+            }
+        }
+    }
+
+
+    public FriendsFilterBenchmark(int numFriends, int numTokens, Random random) {
+        friends = new ArrayList<FbFriend>(numFriends);
+        for(int i = 0; i < numFriends; i++){
+            FbFriend friend  = new FbFriend();
+            friend.uid       = String.valueOf(100000000001000L + i);
+            friend.firstName = capitalize(word(random, 2));
+            friend.lastName  = capitalize(word(random, 3));
+            friends.add(friend);
+        }
+
+        tokens = new String[numTokens];
+        for(int i = 0; i < numTokens; i++){
+            if(random.nextDouble() < NAME_RATIO){                               //name of a friend, like the stream: lower case
+                FbFriend friend = friends.get(random.nextInt(numFriends));
+                tokens[i] = (random.nextBoolean() ? friend.firstName : friend.lastName).toLowerCase();
+            }else{
+                tokens[i] = word(random, 2 + random.nextInt(3));
+            }
+        }
+    }
+
+
+    /**
+     * Filters all tokens the given number of times, returns the number of accepted tokens of the last run
+     */
+    private int run(String filter, CharArraySet names, int times) throws IOException{
+        int accepted = 0;
+        for(int i = 0; i < times; i++){
+            TokenStream stream = filter.equals("set")
+                    ? new FriendsTokenFilter(new ArrayTokenStream(tokens), names)
+                    : new LinearFriendsFilter(new ArrayTokenStream(tokens), friends);
+            accepted = 0;
+            stream.reset();
+            while(stream.incrementToken()) accepted++;
+            stream.end();
+            stream.close();
+        }
+        return accepted;
+    }
+
+
+    private static String word(Random random, int syllables){
+        StringBuilder result = new StringBuilder();
+        for(int i = 0; i < syllables; i++){
+            result.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        return result.toString();
+    }
+
+
+    private static String capitalize(String word){
+        return Character.toUpperCase(word.charAt(0))+word.substring(1);
+    }
+
+
+    private static long mean(long[] values){
+        long sum = 0;
+        for(long value : values) sum += value;
+        return values.length == 0 ? 0 : sum / values.length;
+    }
+
+
+    //emits the given tokens
+    private static final class ArrayTokenStream extends TokenStream {
+        private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+        private final String[]          tokens;
+        private int                     position;
+
+        ArrayTokenStream(String[] tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public boolean incrementToken() throws IOException {
+            if(position >= tokens.length) return false;
+            clearAttributes();
+            termAtt.setEmpty().append(tokens[position++]);
+            return true;
+        }
+
+        @Override
+        public void reset() throws IOException {
+            position = 0;
+        }
+    }
+
+
+    //former implementation extended to last names: compares every token with the names of every friend
+    private static final class LinearFriendsFilter extends FilteringTokenFilter {
+        private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+        private final List<FbFriend>    friends;
+
+        LinearFriendsFilter(TokenStream in, List<FbFriend> friends) {
+            super(true, in);
+            this.friends = friends;
+        }
+
+        @Override
+        protected boolean accept() {
+            for(FbFriend friend : friends){
+                if(friend.firstName != null && termAtt.toString().toLowerCase().equals(friend.firstName.toLowerCase())) return false;
+                if(friend.lastName != null && termAtt.toString().toLowerCase().equals(friend.lastName.toLowerCase())) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package fbrec.bench;
+
+import com.restfb.json.JsonArray;
+import com.restfb.json.JsonException;
+import com.restfb.json.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import fbrec.tagging.FixtureProfileSource;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local stand-in for the parts of the Graph API used by the recommender.
+ * Serves the recorded profiles of a fixture directory (see {@link FixtureProfileSource})
+ * under GET /me/permissions, GET /fql?q=&lt;multiquery&gt; and as batch POST /.
+ * fql queries are answered by their name only, the query text is ignored.
+ * Permissions for statuses and outbox are granted if the fixture contains them,
+ * otherwise querying them fails like on facebook. An optional latency is added
+ * to every http request to simulate the network.
+ *
+ * Set GRAPH_URL = http://localhost:&lt;port&gt;/ in the configuration to use it.
+ * Usage: GraphStub &lt;fixture dir&gt; [port] [latency ms]
+ * @author Daniel
+ */
+public class GraphStub {
+    private final FixtureProfileSource  fixtures;                               //selects the fixture of a token
+    private final long                  latency;                                //added time per http request in ms
+    private final HttpServer            server;
+    private final ExecutorService       executor;
+
+    /**
+     * @param directory     directory of the profile fixtures
+     * @param port          port to listen on, 0 for any free port
+     * @param latency       time in ms added to every request
+     * @throws IOException
+     */
+    public GraphStub(File directory, int port, long latency) throws IOException {
+        this.fixtures = new FixtureProfileSource(directory);
+        this.latency  = latency;
+        this.server   = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        this.executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        if(args.length < 1){
+            System.err.println("Usage: GraphStub <fixture dir> [port] [latency ms]");
+            System.exit(1);
+        }
+        int       port    = args.length > 1 ? Integer.parseInt(args[1]) : 8089;
+        long      latency = args.length > 2 ? Long.parseLong(args[2])   : 0;
+        GraphStub stub    = new GraphStub(new File(args[0]), port, latency);
+        stub.start();
+        System.out.println("graph stub listening on http://localhost:"+stub.getPort()+"/");
+    }
+
+
+    public void start(){
+        server.start();
+    }
+
+    public void stop(){
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort(){
+        return server.getAddress().getPort();
+    }
+
+
+    private void serve(HttpExchange exchange) throws IOException{
+        try{
+            if(latency > 0) Thread.sleep(latency);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+
+        Map<String, String> params = params(exchange.getRequestURI().getRawQuery());
+        if(exchange.getRequestMethod().equals("POST")){
+            params.putAll(params(read(exchange.getRequestBody())));
+        }
+
+        Response response;
+        String   path = exchange.getRequestURI().getPath().replaceFirst("^/+", "");
+        String   token = params.get("access_token");
+        if(token == null){
+            response = error(400, "OAuthException", 190, "An active access token must be used");
+        }else if(path.isEmpty() && params.containsKey("batch")){
+            response = batch(token, params.get("batch"));
+        }else{
+            response = request(token, path, params);
+        }
+
+        byte[] body = response.body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "text/javascript; charset=UTF-8");
+        exchange.sendResponseHeaders(response.code, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+
+    /**
+     * Answers all requests of a batch
+     */
+    private Response batch(String token, String batch){
+        JsonArray requests;
+        try{
+            requests = new JsonArray(batch);
+        }catch(JsonException e){
+            return error(400, "GraphBatchException", 1, "Invalid batch: "+e.getMessage());
+        }
+
+        JsonArray result = new JsonArray();
+        for(int i = 0; i < requests.length(); i++){
+            String              url     = requests.getJsonObject(i).getString("relative_url").replaceFirst("^/+", "");
+            int                 query   = url.indexOf('?');
+            String              path    = query < 0 ? url : url.substring(0, query);
+            Map<String, String> params  = params(query < 0 ? null : url.substring(query + 1));
+            Response            response = request(token, path, params);
+
+            JsonObject header = new JsonObject();
+            header.put("name", "Content-Type");
+            header.put("value", "text/javascript; charset=UTF-8");
+            JsonArray headers = new JsonArray();
+            headers.put(header);
+
+            JsonObject entry = new JsonObject();
+            entry.put("code", response.code);
+            entry.put("headers", headers);
+            entry.put("body", response.body);
+            result.put(entry);
+        }
+        return new Response(200, result.toString());
+    }
+
+
+    /**
+     * Answers a single graph request
+     */
+    private Response request(String token, String path, Map<String, String> params){
+        JsonObject profile;
+        try{
+            profile = new JsonObject(FixtureProfileSource.read(fixtures.fixture(token)));
+        }catch(IOException e){
+            return error(500, "FixtureException", 2, e.getMessage());
+        }
+
+        if(path.equals("me/permissions")){
+            JsonObject permissions = new JsonObject();
+            permissions.put("installed", 1);
+            permissions.put("user_likes", 1);
+            permissions.put("user_birthday", 1);
+            if(profile.has("statuses")) permissions.put("read_stream", 1);
+            if(profile.has("outbox"))   permissions.put("read_mailbox", 1);
+            return data(new JsonArray().put(permissions));
+        }
+
+        if(path.equals("fql") && params.containsKey("q")){
+            JsonObject queries;
+            try{
+                queries = new JsonObject(params.get("q"));
+            }catch(JsonException e){
+                return error(400, "GraphMethodException", 100, "Only fql multiqueries are supported");
+            }
+
+            JsonArray results = new JsonArray();
+            for(Iterator<?> names = queries.sortedKeys(); names.hasNext();){
+                String name = (String) names.next();
+                if((name.equals("statuses") || name.equals("outbox")) && !profile.has(name)){
+                    return error(403, "OAuthException", 298, "Requires extended permission: "
+                            +(name.equals("statuses") ? "read_stream" : "read_mailbox"));
+                }
+                JsonObject result = new JsonObject();
+                result.put("name", name);
+                result.put("fql_result_set", profile.has(name) ? profile.getJsonArray(name) : new JsonArray());
+                results.put(result);
+            }
+            return data(results);
+        }
+
+        return error(400, "GraphMethodException", 100, "Unsupported request: "+path);
+    }
+
+
+    private static Response data(JsonArray data){
+        JsonObject body = new JsonObject();
+        body.put("data", data);
+        return new Response(200, body.toString());
+    }
+
+
+    private static Response error(int code, String type, int errorCode, String message){
+        JsonObject error = new JsonObject();
+        error.put("message", message);
+        error.put("type", type);
+        error.put("code", errorCode);
+        JsonObject body = new JsonObject();
+        body.put("error", error);
+        return new Response(code, body.toString());
+    }
+
+
+    /**
+     * Decodes url encoded parameters
+     */
+    private static Map<String, String> params(String encoded){
+        Map<String, String> result = new HashMap<String, String>();
+        if(encoded == null || encoded.isEmpty()) return result;
+        try{
+            for(String param : encoded.split("&")){
+                int split = param.indexOf('=');
+                if(split < 0) result.put(URLDecoder.decode(param, "UTF-8"), "");
+                else          result.put(URLDecoder.decode(param.substring(0, split), "UTF-8"), URLDecoder.decode(param.substring(split + 1), "UTF-8"));
+            }
+        }catch(UnsupportedEncodingException e){
+            throw new IllegalStateException(e);
+        }
+        return result;
+    }
+
+
+    private static String read(InputStream in) throws IOException{
+        StringBuilder result = new StringBuilder();
+        byte[]        buffer = new byte[8192];
+        for(int read = in.read(buffer); read != -1; read = in.read(buffer)){
+            result.append(new String(buffer, 0, read, "ISO-8859-1"));             //url encoded, ascii only
+        }
+        in.close();
+        return result.toString();
+    }
+
+
+    //http response of the stub
+    private static class Response {
+        final int       code;
+        final String    body;
+
+        Response(int code, String body) {
+            this.code = code;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package fbrec.bench;
+
+import fbrec.database.Products;
+import fbrec.matching.IndexManager;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Measures the per query latency of the product index for each directory
+ * implementation supported by {@link IndexManager#openDirectory(File, String)}
+ * with a growing number of concurrent searchers sharing one IndexSearcher.
+ * Queries are single term queries on the text field, each hit document is
+ * loaded like the Matcher does.
+ *
+ * Usage: IndexDirectoryBenchmark &lt;index dir&gt; [threads,...] [queries per thread]
+ * e.g. IndexDirectoryBenchmark web/WEB-INF/files/index2 1,2,4,8 2000
+ * @author Daniel
+ */
+public class IndexDirectoryBenchmark {
+    private static final String[]   TYPES       = {"mmap", "niofs", "simplefs", "ram"};
+    private static final int        MAX_TERMS   = 5000;                         //number of distinct query terms
+    private static final int        MAX_HITS    = 10;                           //hits loaded per query
+
+    public static void main(String[] args) throws Exception {
+        if(args.length < 1){
+            System.err.println("Usage: IndexDirectoryBenchmark <index dir> [threads,...] [queries per thread]");
+            System.exit(1);
+        }
+        File    path             = new File(args[0]);
+        String  threadList       = args.length > 1 ? args[1] : "1,2,4,8";
+        int     queriesPerThread = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+        System.out.println("type\tthreads\tqueries\tmean(us)\tp50(us)\tp99(us)\tqueries/s");
+        for(String type : TYPES){
+            Directory       dir      = IndexManager.openDirectory(path, type);
+            DirectoryReader reader   = DirectoryReader.open(dir);
+            IndexSearcher   searcher = new IndexSearcher(reader);
+            List<Query>     queries  = queries(reader);
+
+            run(searcher, queries, 1, queriesPerThread);                        //warm up
+            for(String threads : threadList.split(",")){
+                int     n       = Integer.parseInt(threads.trim());
+                long    start   = System.nanoTime();
+                long[]  latency = run(searcher, queries, n, queriesPerThread);
+                long    total   = System.nanoTime() - start;
+                System.out.println(type+"\t"+n+"\t"+latency.length
+                        +"\t"+(mean(latency)/1000)
+                        +"\t"+(latency[latency.length/2]/1000)
+                        +"\t"+(latency[(int)(latency.length*0.99)]/1000)
+                        +"\t"+(latency.length*1000000000L/total));
+            }
+            reader.close();
+            dir.close();
+        }
+    }
+
+
+    /**
+     * Runs the queries with the given number of threads and returns the sorted latencies in ns
+     */
+    private static long[] run(final IndexSearcher searcher, final List<Query> queries, int threads, final int queriesPerThread) throws Exception{
+        ExecutorService         pool    = Executors.newFixedThreadPool(threads);
+        List<Future<long[]>>    results = new ArrayList<Future<long[]>>();
+
+        for(int t = 0; t < threads; t++){
+            final int offset = t * 7919;                                        //threads start at different terms
+            results.add(pool.submit(new Callable<long[]>() {
+                @Override
+                public long[] call() throws Exception {
+                    long[] latency = new long[queriesPerThread];
+                    for(int i = 0; i < queriesPerThread; i++){
+                        Query query = queries.get((offset + i) % queries.size());
+                        long start  = System.nanoTime();
+                        TopScoreDocCollector collector = TopScoreDocCollector.create(MAX_HITS, true);
+                        searcher.search(query, collector);
+                        for(ScoreDoc hit : collector.topDocs().scoreDocs){
+                            searcher.doc(hit.doc);
+                        }
+                        latency[i] = System.nanoTime() - start;
+                    }
+                    return latency;
+                }
+            }));
+        }
+
+        long[] all = new long[threads * queriesPerThread];
+        int    pos = 0;
+        for(Future<long[]> result : results){
+            long[] latency = result.get();
+            System.arraycopy(latency, 0, all, pos, latency.length);
+            pos += latency.length;
+        }
+        pool.shutdown();
+        Arrays.sort(all);
+        return all;
+    }
+
+
+    /**
+     * Creates term queries from the terms of the text field
+     */
+    private static List<Query> queries(DirectoryReader reader) throws Exception{
+        List<Query> queries = new ArrayList<Query>();
+        Terms       terms   = MultiFields.getTerms(reader, Products.TEXT_FIELD);
+        if(terms == null) throw new IllegalStateException("index contains no field "+Products.TEXT_FIELD);
+
+        TermsEnum   termsEnum = terms.iterator(null);
+        BytesRef    term;
+        while((term = termsEnum.next()) != null && queries.size() < MAX_TERMS){
+            queries.add(new TermQuery(new Term(Products.TEXT_FIELD, BytesRef.deepCopyOf(term))));
+        }
+        return queries;
+    }
+
+
+    private static long mean(long[] values){
+        long sum = 0;
+        for(long value : values) sum += value;
+        return values.length == 0 ? 0 : sum / values.length;
+    }
+}
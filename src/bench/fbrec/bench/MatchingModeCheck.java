@@ -0,0 +1,148 @@
+package fbrec.bench;
+
+import fbrec.database.Products;
+import fbrec.matching.GenderAgeFilters;
+import fbrec.matching.Index;
+import fbrec.matching.Index.SearchResult;
+import fbrec.matching.QueryBuilder;
+import fbrec.matching.TagCollector;
+import fbrec.model.Tag;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.de.GermanAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+
+/**
+ * Checks that the combined matching mode scores every product like the per tag
+ * mode: builds a small random product index in a RAMDirectory, runs one query
+ * per tag and the combined query with a {@link TagCollector} and compares the
+ * hits and scores of each tag.
+ *
+ * Usage: MatchingModeCheck [products] [seed]
+ * e.g. MatchingModeCheck 2000 42
+ * @author Daniel
+ */
+public class MatchingModeCheck {
+    private static final String[]   WORDS       = {"kleid", "hose", "schuh", "jacke", "rot", "blau", "leder",
+                                                   "sport", "fussball", "laufen", "buch", "roman", "krimi",
+                                                   "kamera", "handy", "musik", "gitarre", "garten", "kueche",
+                                                   "spiel", "puppe", "uhr", "tasche", "sommer", "winter"};
+    private static final String[]   LABELS      = {Products.LABEL_BOYS, Products.LABEL_GIRLS, Products.LABEL_MEN,
+                                                   Products.LABEL_WOMEN, Products.LABEL_UNISEX, Products.LABEL_UNDEFINED};
+    private static final double     TOLERANCE   = 1e-4;                         //relative score difference accepted as float rounding
+
+    public static void main(String[] args) throws Exception {
+        int             numDocs     = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        long            seed        = args.length > 1 ? Long.parseLong(args[1]) : 42;
+        Random          random      = new Random(seed);
+        Analyzer        analyzer    = new GermanAnalyzer(Version.LUCENE_40);
+        RAMDirectory    dir         = new RAMDirectory();
+        IndexWriter     writer      = new IndexWriter(dir, new IndexWriterConfig(Version.LUCENE_40, analyzer));
+
+        for(int i = 0; i < numDocs; i++){
+            Document doc = new Document();
+            doc.add(new StringField(Products.ID_FIELD, String.valueOf(i), Field.Store.YES));
+            doc.add(new TextField(Products.TITLE_FIELD, words(random, 3), Field.Store.YES));
+            doc.add(new TextField(Products.TEXT_FIELD, words(random, 20), Field.Store.NO));
+            doc.add(new TextField(Products.BRAND_FIELD, words(random, 1), Field.Store.NO));
+            doc.add(new TextField(Products.CATEGORY_FIELD, words(random, 2), Field.Store.NO));
+            doc.add(new TextField(Products.GENDER_AGE_FIELD, LABELS[random.nextInt(LABELS.length)], Field.Store.NO));
+            writer.addDocument(doc);
+            if(i % (numDocs/4 + 1) == 0) writer.commit();                     //several segments
+        }
+        writer.close();
+
+        DirectoryReader reader      = DirectoryReader.open(dir);
+        Index           index       = new Index(new IndexSearcher(reader), analyzer);
+        QueryBuilder    builder     = new QueryBuilder(analyzer);
+        List<Tag>       tags        = tags();
+        Filter          restriction = new GenderAgeFilters(analyzer).get(GenderAgeFilters.labels(true, false, true));
+        Query[]         mainQueries = new Query[tags.size()];
+        Query[]         poolQueries = new Query[tags.size()];
+        int             errors      = 0;
+
+        for(int i = 0; i < tags.size(); i++){
+            mainQueries[i] = builder.mainQuery(tags.get(i));
+            poolQueries[i] = builder.poolQuery(tags.get(i));
+        }
+        TagCollector collector = new TagCollector(index, mainQueries, poolQueries, numDocs);
+        index.search(builder.combinedQuery(mainQueries, poolQueries), restriction, collector);
+
+        System.out.println("tag\thits\tcombined\tmax diff");
+        for(int i = 0; i < tags.size(); i++){
+            Map<Integer, Double> perTag   = new HashMap<Integer, Double>();
+            Map<Integer, Double> combined = new HashMap<Integer, Double>();
+            double               maxDiff  = 0;
+
+            for(SearchResult result : index.search(builder.tagQuery(tags.get(i), tags), restriction, numDocs)){
+                perTag.put(result.productID, result.score);
+            }
+            for(ScoreDoc hit : collector.topDocs(i)){
+                combined.put(index.result(hit).productID, (double) hit.score);
+            }
+            if(!perTag.keySet().equals(combined.keySet())){
+                errors++;
+            }
+            for(Map.Entry<Integer, Double> entry : perTag.entrySet()){
+                Double score = combined.get(entry.getKey());
+                if(score == null) continue;
+                double diff = Math.abs(score - entry.getValue()) / entry.getValue();
+                maxDiff = Math.max(maxDiff, diff);
+                if(diff > TOLERANCE) errors++;
+            }
+            System.out.println(tags.get(i).text+"\t"+perTag.size()+"\t"+combined.size()+"\t"+maxDiff);
+        }
+        reader.close();
+
+        System.out.println(errors == 0 ? "OK" : errors+" differences");
+        System.exit(errors == 0 ? 0 : 1);
+    }
+
+
+    /**
+     * Tags with single word, phrase and unknown texts, some with a wordPool
+     */
+    private static List<Tag> tags(){
+        List<Tag> tags = new ArrayList<Tag>();
+        tags.add(tag("kleid", "rot", "sommer"));
+        tags.add(tag("fussball", "sport", "laufen schuh"));
+        tags.add(tag("roman krimi"));
+        tags.add(tag("gitarre", "musik"));
+        tags.add(tag("handy"));
+        tags.add(tag("segelboot", "winter"));                                   //not contained in any product
+        return tags;
+    }
+
+
+    private static Tag tag(String text, String... pool){
+        Tag tag = new Tag(text, 1.0, MatchingModeCheck.class, "check");
+        tag.wordPool.addAll(Arrays.asList(pool));
+        return tag;
+    }
+
+
+    private static String words(Random random, int count){
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < count; i++){
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,120 @@
+package fbrec.bench;
+
+import fbrec.control.RecommendationProcess;
+import fbrec.control.RecommendationRequest;
+import fbrec.control.WorkerPools;
+import fbrec.tagging.FixtureProfileSource;
+import fbrec.tagging.GraphProfileSource;
+import fbrec.tagging.IProfileSource;
+import fbrec.tagging.ProfileCache;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays recorded profiles through the full RecommendationProcess and
+ * measures latency and throughput without facebook.
+ * Profiles are either served directly from the fixtures or through the
+ * GraphStub, which includes the http round trip and the parsing of the
+ * batch response. Every request uses its own token, so the ProfileCache
+ * does not hide the loading.
+ * Must be run with WEB-INF/classes on the classpath, so the configuration,
+ * the index and the other files of the web application are found.
+ *
+ * Usage: ProfileReplayBenchmark &lt;fixture dir&gt; [requests] [threads] [fixtures|stub] [latency ms]
+ * e.g. ProfileReplayBenchmark fixtures 5000 8 stub 150
+ * @author Daniel
+ */
+public class ProfileReplayBenchmark {
+    private static final int        WARMUP_REQUESTS = 50;                       //requests before measuring
+
+    public static void main(String[] args) throws Exception {
+        if(args.length < 1){
+            System.err.println("Usage: ProfileReplayBenchmark <fixture dir> [requests] [threads] [fixtures|stub] [latency ms]");
+            System.exit(1);
+        }
+        File    directory = new File(args[0]);
+        int     requests  = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int     threads   = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        String  mode      = args.length > 3 ? args[3] : "fixtures";
+        long    latency   = args.length > 4 ? Long.parseLong(args[4])   : 0;
+
+        GraphStub      stub   = null;
+        IProfileSource source;
+        if(mode.equals("stub")){
+            stub   = new GraphStub(directory, 0, latency);
+            stub.start();
+            source = new GraphProfileSource("http://localhost:"+stub.getPort()+"/");
+        }else{
+            source = new FixtureProfileSource(directory);
+        }
+
+        run(source, "warmup-", WARMUP_REQUESTS, 1);
+        long          start     = System.nanoTime();
+        AtomicInteger errors    = new AtomicInteger(0);
+        long[]        latencies = run(source, "replay-", requests, threads, errors);
+        long          total     = System.nanoTime() - start;
+
+        System.out.println("mode\tthreads\trequests\terrors\tmean(ms)\tp50(ms)\tp99(ms)\trequests/s");
+        System.out.println(mode+"\t"+threads+"\t"+latencies.length+"\t"+errors.get()
+                +"\t"+(mean(latencies)/1000000)
+                +"\t"+(latencies[latencies.length/2]/1000000)
+                +"\t"+(latencies[(int)(latencies.length*0.99)]/1000000)
+                +"\t"+(latencies.length*1000000000L/total));
+        System.out.println("profile cache: "+ProfileCache.getInstance());
+
+        if(stub != null) stub.stop();
+        WorkerPools.shutdown();
+    }
+
+
+    private static long[] run(IProfileSource source, String prefix, int requests, int threads) throws Exception{
+        return run(source, prefix, requests, threads, new AtomicInteger(0));
+    }
+
+
+    /**
+     * Runs the requests with the given number of threads and returns the sorted latencies in ns
+     */
+    private static long[] run(final IProfileSource source, final String prefix, final int requests, int threads, final AtomicInteger errors) throws Exception{
+        ExecutorService         pool    = Executors.newFixedThreadPool(threads);
+        List<Future<Long>>      results = new ArrayList<Future<Long>>();
+
+        for(int i = 0; i < requests; i++){
+            final String token = prefix + i;                                    //new token => no profile cache hit
+            results.add(pool.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    long start = System.nanoTime();
+                    try{
+                        new RecommendationProcess(new RecommendationRequest(token, 0, 0, 0), source).init().getRecommendations();
+                    }catch(Exception e){
+                        errors.incrementAndGet();
+                    }
+                    return System.nanoTime() - start;
+                }
+            }));
+        }
+
+        long[] all = new long[requests];
+        for(int i = 0; i < requests; i++){
+            all[i] = results.get(i).get();
+        }
+        pool.shutdown();
+        Arrays.sort(all);
+        return all;
+    }
+
+
+    private static long mean(long[] values){
+        long sum = 0;
+        for(long value : values) sum += value;
+        return values.length == 0 ? 0 : sum / values.length;
+    }
+}
@@ -0,0 +1,273 @@
+package fbrec.bench;
+
+import fbrec.control.Config;
+import fbrec.control.ConfigSnapshot;
+import fbrec.database.Products;
+import fbrec.matching.IndexManager;
+import fbrec.matching.Matcher;
+import fbrec.model.Recommendation;
+import fbrec.model.Tag;
+import fbrec.ranking.Ranking;
+import fbrec.ranking.processing.RecommendationAggregator;
+import fbrec.tagging.FbConnector.FbProfile;
+import fbrec.tagging.FbConnector.FbStatus;
+import fbrec.tagging.module.BrandsModule;
+import fbrec.tagging.module.EntertainmentModule;
+import fbrec.tagging.module.Module;
+import fbrec.tagging.module.SportsModule;
+import fbrec.tagging.processing.SemanticsEnhancer;
+import fbrec.tagging.processing.TagDuplicateFilter;
+import fbrec.tagging.processing.TagListTrimmer;
+import fbrec.tagging.processing.TagMerger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import legacy.TermMatrix.Doc;
+import legacy.TfIdfTextModule;
+import legacy.TfidfMatrix;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Measures the time of each stage of the recommendation process for profiles
+ * of growing size. A profile of size n has n likes, n statuses and n friends,
+ * see {@link SyntheticProfiles}. The input of a stage is the output of the
+ * previous stages for the same profile, it is prepared before each operation
+ * and not measured. Like in the process, only the best DEFAULT_NUM_TAGS tags
+ * are matched. Matching runs against the index of the configuration.
+ * Logging is reduced to warnings, so the stages are measured without it.
+ * Must be run with WEB-INF/classes on the classpath, so the configuration,
+ * the index and the other files of the web application are found.
+ *
+ * Usage: StageBenchmark [sizes,...] [iterations] [stage,...]
+ * e.g. StageBenchmark 50,500,5000 200 tfidf-build,tfidf-topterms
+ * @author Daniel
+ */
+public class StageBenchmark {
+    private static final String[]   STAGES      = {"like-modules", "tfidf-build", "tfidf-topterms", "semantics",
+                                                   "tag-filters", "matching", "ranking", "json"};
+    private static final int        VOCABULARY  = 5000;                         //number of index terms used for texts
+    private static final int        NUM_RESULTS = 10;                           //recommendations per request
+    private static final int        TOP_TERMS   = 10;                           //top terms per document
+
+    private final ConfigSnapshot    config;
+    private final int               size;                                       //likes, statuses and friends of the profile
+    private FbProfile               profile;                                    //benchmarked profile
+    private List<Doc>               docs;                                       //statuses as tfidf documents
+    private List<Tag>               tags;                                       //tags of all modules
+    private List<Tag>               queryTags;                                  //processed and trimmed tags, as matched
+    private List<Recommendation>    recommendations;                            //matched recommendations
+
+    public static void main(String[] args) throws Exception {
+        String          sizeList   = args.length > 0 ? args[0] : "50,500,5000";
+        int             iterations = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        List<String>    stages     = args.length > 2 ? Arrays.asList(args[2].split(",")) : Arrays.asList(STAGES);
+
+        ConfigSnapshot  config     = Config.loadConfig();
+        Logger.getLogger(Config.EVENT_LOGGER).setLevel(Level.WARN);
+        Logger.getLogger(Config.RESULT_LOGGER).setLevel(Level.WARN);
+        List<String>    vocabulary = vocabulary();
+
+        System.out.println("stage\tsize\titerations\tmean(us)\tp50(us)\tp99(us)\tops/s");
+        for(String s : sizeList.split(",")){
+            int            size  = Integer.parseInt(s.trim());
+            StageBenchmark bench = new StageBenchmark(config, size);
+            bench.setUp(vocabulary);
+            for(String stage : stages){
+                bench.run(stage, Math.max(iterations / 10, 1));                 //warm up
+                long[] latency = bench.run(stage, iterations);
+                System.out.println(stage+"\t"+size+"\t"+iterations
+                        +"\t"+(mean(latency)/1000)
+                        +"\t"+(latency[latency.length/2]/1000)
+                        +"\t"+(latency[(int)(latency.length*0.99)]/1000)
+                        +"\t"+(mean(latency) > 0 ? 1000000000L/mean(latency) : 0));
+            }
+        }
+        IndexManager.shutdown();
+    }
+
+
+    public StageBenchmark(ConfigSnapshot config, int size) {
+        this.config = config;
+        this.size   = size;
+    }
+
+
+    /**
+     * Creates the profile and the inputs of all stages by running the stages once
+     */
+    private void setUp(List<String> vocabulary) throws Exception{
+        profile = new SyntheticProfiles(vocabulary, size).create(size, size, size);
+
+        docs = new ArrayList<Doc>();
+        for(FbStatus status : profile.statuses()){
+            docs.add(new Doc(docs.size(), status.message));
+        }
+
+        tags = new ArrayList<Tag>();
+        for(Module module : modules()){
+            tags.addAll(module.getTags(profile));
+        }
+        tags.addAll(new TfIdfTextModule(config.TEXT_WEIGHT, config.MAX_NUM_TAGS_PER_MODULE).getTags(profile));
+        new SemanticsEnhancer().process(tags);
+
+        queryTags = copyTags(tags);
+        new TagDuplicateFilter().process(queryTags);
+        new TagMerger().process(queryTags);
+        new TagListTrimmer(config.DEFAULT_NUM_TAGS).process(queryTags);
+
+        Matcher matcher = new Matcher(profile, NUM_RESULTS, config);
+        matcher.matchTagsToProducts(copyTags(queryTags));
+        recommendations = matcher.getRecommendations();
+    }
+
+
+    /**
+     * Runs the stage the given number of times and returns the sorted latencies in ns
+     */
+    private long[] run(String stage, int iterations) throws Exception{
+        long[] latency = new long[iterations];
+        for(int i = 0; i < iterations; i++){
+            latency[i] = runOnce(stage);
+        }
+        Arrays.sort(latency);
+        return latency;
+    }
+
+
+    /**
+     * Prepares the input of the stage, runs it once and returns the time it took in ns
+     */
+    private long runOnce(String stage) throws Exception{
+        long start;
+        if(stage.equals("like-modules")){
+            List<Module> modules = modules();
+            start = System.nanoTime();
+            for(Module module : modules){
+                module.getTags(profile);
+            }
+        }else if(stage.equals("tfidf-build")){
+            start = System.nanoTime();
+            new TfidfMatrix(docs);
+        }else if(stage.equals("tfidf-topterms")){
+            TfidfMatrix matrix = new TfidfMatrix(docs);
+            start = System.nanoTime();
+            for(Doc doc : docs){
+                matrix.topTerms(doc.ID, TOP_TERMS);
+            }
+        }else if(stage.equals("semantics")){
+            List<Tag> input = copyTags(tags);
+            start = System.nanoTime();
+            new SemanticsEnhancer().process(input);
+        }else if(stage.equals("tag-filters")){
+            List<Tag> input = copyTags(tags);
+            start = System.nanoTime();
+            new TagDuplicateFilter().process(input);
+            new TagMerger().process(input);
+        }else if(stage.equals("matching")){
+            List<Tag> input   = copyTags(queryTags);
+            Matcher   matcher = new Matcher(profile, NUM_RESULTS, config);
+            start = System.nanoTime();
+            matcher.matchTagsToProducts(input);
+        }else if(stage.equals("ranking")){
+            ArrayList<Recommendation> input = copyRecommendations(recommendations);
+            start = System.nanoTime();
+            new RecommendationAggregator(NUM_RESULTS).process(input);
+        }else if(stage.equals("json")){
+            Ranking ranking = new Ranking(copyRecommendations(recommendations));
+            ranking.setAccessToken("benchmark");
+            ranking.setPermissions(new HashSet<String>(Arrays.asList("user_likes", "read_stream")));
+            start = System.nanoTime();
+            ranking.toJSONString();
+        }else{
+            throw new IllegalArgumentException("unknown stage "+stage+", known stages: "+Arrays.toString(STAGES));
+        }
+        return System.nanoTime() - start;
+    }
+
+
+    private List<Module> modules(){
+        List<Module> modules = new ArrayList<Module>();
+        modules.add(new EntertainmentModule(config.ENTERTAINMENT_WEIGHT, config.MAX_NUM_TAGS_PER_MODULE));
+        modules.add(new BrandsModule(config.BRANDS_WEIGHT, config.MAX_NUM_TAGS_PER_MODULE));
+        modules.add(new SportsModule(config.SPORTS_WEIGHT, config.MAX_NUM_TAGS_PER_MODULE));
+        return modules;
+    }
+
+
+    /**
+     * Copies the tags, processors change them
+     */
+    private static List<Tag> copyTags(List<Tag> tags){
+        List<Tag> result = new ArrayList<Tag>(tags.size());
+        for(Tag tag : tags){
+            Tag copy      = new Tag(tag.text, tag.score, StageBenchmark.class, new String[0]);
+            copy.source   = new HashSet<String>(tag.source);
+            copy.base     = new HashSet<String>(tag.base);
+            copy.wordPool = new HashSet<String>(tag.wordPool);
+            result.add(copy);
+        }
+        return result;
+    }
+
+
+    /**
+     * Copies the recommendations, processors change their scores and ranks
+     */
+    private static ArrayList<Recommendation> copyRecommendations(List<Recommendation> recs){
+        ArrayList<Recommendation> result = new ArrayList<Recommendation>(recs.size());
+        for(Recommendation rec : recs){
+            result.add(new Recommendation(rec.getProductID(), rec.getTitle(), rec.getRank(), rec.getScore(),
+                                          new HashSet<String>(Arrays.asList("benchmark")), new HashSet<String>(Arrays.asList("likes"))));
+        }
+        return result;
+    }
+
+
+    /**
+     * Returns terms of the text field of the index, longer than 3 characters
+     */
+    private static List<String> vocabulary() throws Exception{
+        IndexManager    manager  = IndexManager.getInstance();
+        IndexSearcher   searcher = manager.acquire();
+        List<String>    result   = new ArrayList<String>();
+        try{
+            IndexReader reader = searcher.getIndexReader();
+            Terms       terms  = MultiFields.getTerms(reader, Products.TEXT_FIELD);
+            if(terms == null) throw new IllegalStateException("index contains no field "+Products.TEXT_FIELD);
+
+            TermsEnum   termsEnum = terms.iterator(null);
+            BytesRef    term;
+            while((term = termsEnum.next()) != null){
+                if(term.length > 3) result.add(term.utf8ToString());
+            }
+        }finally{
+            manager.release(searcher);
+        }
+
+        //take terms evenly from the sorted dictionary, shuffled so frequent words are not alphabetical
+        List<String> vocabulary = new ArrayList<String>();
+        int          step       = Math.max(result.size() / VOCABULARY, 1);
+        for(int i = 0; i < result.size() && vocabulary.size() < VOCABULARY; i += step){
+            vocabulary.add(result.get(i));
+        }
+        Collections.shuffle(vocabulary, new Random(42));
+        return vocabulary;
+    }
+
+
+    private static long mean(long[] values){
+        long sum = 0;
+        for(long value : values) sum += value;
+        return values.length == 0 ? 0 : sum / values.length;
+    }
+}
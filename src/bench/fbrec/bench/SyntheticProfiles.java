@@ -0,0 +1,98 @@
+package fbrec.bench;
+
+import com.restfb.DefaultJsonMapper;
+import com.restfb.json.JsonArray;
+import com.restfb.json.JsonObject;
+import fbrec.tagging.FbConnector.FbProfile;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Creates reproducible profiles of a given size for benchmarks.
+ * Words are drawn from a vocabulary with a skewed distribution, so some terms
+ * are frequent like in real posts. Likes are spread over the categories the
+ * like based modules use and a category no module uses.
+ * @author Daniel
+ */
+public class SyntheticProfiles {
+    private static final String[]   LIKE_TYPES  = {"BOOK", "MOVIE", "TV SHOW", "GAMES/TOYS", "MUSICIAN/BAND", "CLOTHING",
+                                                   "JEWELRY/WATCHES", "ATHLETE", "PROFESSIONAL SPORTS TEAM", "COMPANY"};
+    private static final String[]   FIRST_NAMES = {"Anna", "Jonas", "Lena", "Lukas", "Marie", "Paul", "Sophie", "Felix", "Laura", "Tim"};
+    private static final String[]   LAST_NAMES  = {"Müller", "Schmidt", "Schneider", "Fischer", "Weber", "Meyer", "Wagner", "Becker"};
+
+    private final List<String>  vocabulary;                                     //words the texts are made of
+    private final long          seed;                                           //seed of the random generator
+
+    /**
+     * @param vocabulary    words used for likes and posts, must not be empty
+     * @param seed          seed, equal seeds create equal profiles
+     */
+    public SyntheticProfiles(List<String> vocabulary, long seed) {
+        this.vocabulary = vocabulary;
+        this.seed       = seed;
+    }
+
+
+    /**
+     * Creates a profile with the given number of likes, statuses and friends
+     * @param likes
+     * @param statuses
+     * @param friends
+     * @return
+     */
+    public FbProfile create(int likes, int statuses, int friends){
+        Random      random  = new Random(seed);
+        JsonObject  profile = new JsonObject();
+
+        JsonObject user = new JsonObject();
+        user.put("uid", "100000000000001");
+        user.put("name", "Benchmark User");
+        user.put("sex", random.nextBoolean() ? "male" : "female");
+        user.put("birthday_date", "03/14/1987");
+        profile.put("user", new JsonArray().put(user));
+
+        JsonArray likeArray = new JsonArray();
+        for(int i = 0; i < likes; i++){
+            JsonObject like = new JsonObject();
+            like.put("name", words(random, 1 + random.nextInt(3)));
+            like.put("type", LIKE_TYPES[i % LIKE_TYPES.length]);
+            likeArray.put(like);
+        }
+        profile.put("likes", likeArray);
+
+        JsonArray friendArray = new JsonArray();
+        for(int i = 0; i < friends; i++){
+            JsonObject friend = new JsonObject();
+            friend.put("uid", String.valueOf(100000000001000L + i));
+            friend.put("first_name", FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]);
+            friend.put("last_name", LAST_NAMES[random.nextInt(LAST_NAMES.length)]);
+            friendArray.put(friend);
+        }
+        profile.put("friends", friendArray);
+
+        JsonArray statusArray = new JsonArray();
+        for(int i = 0; i < statuses; i++){
+            JsonObject status = new JsonObject();
+            status.put("message", words(random, 8 + random.nextInt(13))+".");
+            statusArray.put(status);
+        }
+        profile.put("statuses", statusArray);
+        profile.put("outbox", new JsonArray());
+
+        return new DefaultJsonMapper().toJavaObject(profile.toString(), FbProfile.class);
+    }
+
+
+    /**
+     * Returns the given number of words, frequent words are drawn more often
+     */
+    private String words(Random random, int count){
+        StringBuilder result = new StringBuilder();
+        for(int i = 0; i < count; i++){
+            double r = random.nextDouble();
+            if(i > 0) result.append(' ');
+            result.append(vocabulary.get((int) (r * r * r * vocabulary.size())));
+        }
+        return result.toString();
+    }
+}
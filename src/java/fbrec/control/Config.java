@@ -8,6 +8,10 @@ import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.ConsoleAppender;
 import org.apache.log4j.FileAppender;
@@ -15,14 +19,12 @@ import org.apache.log4j.Layout;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PatternLayout;
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.de.GermanAnalyzer;
-import org.apache.lucene.analysis.util.CharArraySet;
-import org.apache.lucene.analysis.util.WordlistLoader;
-import org.apache.lucene.util.Version;
 
 /**
- * Holds all config constants
+ * Holds all config constants.
+ * The values of the property file are held in an immutable {@link ConfigSnapshot},
+ * which is loaded once and replaced atomically when the file changes. Requests
+ * keep the snapshot they started with.
  * @author Daniel
  */
 public class Config{    
@@ -30,44 +32,36 @@ public class Config{
     private static final String  CONFIG_PROPERTIES = "config.properties";
     
     //**************************************************************************
-    //CONSTANTS FROM PROPERTY FILE
+    //REAL CONSTANTS
     //**************************************************************************
     
-    //general constants    
-    public static String    INDEX_DIR;
-    public static String    GERMANET_DIR;
-    public static String    GERMAN_STOPWORD_FILE;
-    public static String    POS_MODEL_FILE;
-    public static String    LOGPATH;
-    public static Level     LOGLEVEL;
+    //constants concerning logging
+    public static final String EVENT_LOGGER         = "events";
+    public static final String RESULT_LOGGER        = "result";
+    public static final String ERROR_LOGGER         = "error";
     
-    //parameters influencing the recommendation process
-    public static double    ENTERTAINMENT_WEIGHT;
-    public static double    TEXT_WEIGHT;
-    public static double    BRANDS_WEIGHT;
-    public static double    SPORTS_WEIGHT;
+    //interval in which the property file is checked for changes (ms)
+    public static final long   WATCH_INTERVAL       = 10000;
     
-    //detail parameters
-    public static int       DEFAULT_NUM_RESULTS;
-    public static int       DEFAULT_NUM_TAGS;
-    public static int       DEFAULT_AGE;
-    public static int       MAX_NUM_TAGS_PER_MODULE;
-    public static int       MIN_RESULTS_PER_QUERY;
-    public static double    MIN_TAG_SCORE_PERCENT;    
-
+    //interval in which the index is checked for new segments (ms)
+    public static final long   INDEX_REFRESH_INTERVAL = 60000;
     
+    //keys which are only read on startup, changes need a restart (see config.properties)
+    private static final String[] RESTART_KEYS      = {"GERMANET_DIR", "GERMANET_SNAPSHOT", "LOGPATH",
+                                                       "POS_MODEL_FILE", "POS_TAGGER_POOL_SIZE", "INDEX_DIR",
+                                                       "INDEX_DIRECTORY", "TAGGING_THREADS", "FACEBOOK_THREADS",
+                                                       "PROCESSING_THREADS", "MATCHING_THREADS", "PROFILE_CACHE_SIZE",
+                                                       "PROFILE_CACHE_TTL"};
     
     
     //**************************************************************************
-    //REAL CONSTANTS
+    //CURRENT CONFIGURATION
     //**************************************************************************
     
-    //constants concerning logging
-    public static final String EVENT_LOGGER         = "events";
-    public static final String RESULT_LOGGER        = "result";
-    public static final String ERROR_LOGGER         = "error";
-   
-    public static Analyzer DEFAULT_ANALYZER;
+    private static volatile ConfigSnapshot      current;                        //currently valid configuration
+    private static volatile long                lastModified;                   //modification time of the loaded property file
+    private static Properties                   properties;                     //content of the loaded property file, compared on reload
+    private static ScheduledExecutorService     watcher;                        //checks the property file for changes
     
     
     static{
@@ -94,12 +88,50 @@ public class Config{
     }
     
     /**
-     * Loads the config properties file
+     * Returns the current configuration.
+     * @return
+     * @throws IllegalStateException if the configuration was not loaded yet
+     */
+    public static ConfigSnapshot get(){
+        ConfigSnapshot result = current;
+        if(result == null){
+            throw new IllegalStateException("Configuration not loaded.");
+        }
+        return result;
+    }
+    
+    
+    /**
+     * Loads the config properties file if it was not loaded yet and returns 
+     * the current configuration.
+     * @return
+     * @throws ConfigException 
+     */
+    public static ConfigSnapshot loadConfig() throws ConfigException{ 
+        ConfigSnapshot result = current;
+        if(result == null){
+            synchronized(Config.class){
+                result = current;
+                if(result == null){
+                    result = reloadConfig();
+                }
+            }
+        }
+        return result;
+    }
+    
+    
+    /**
+     * Loads the config properties file and replaces the current configuration.
+     * Requests which are already running keep using the old configuration.
+     * @return the new configuration
      * @throws ConfigException 
      */
-    public static void loadConfig() throws ConfigException{ 
+    public static synchronized ConfigSnapshot reloadConfig() throws ConfigException{
         //load property file
-        Properties prop = new Properties();
+        Properties  prop     = new Properties();
+        File        file     = getFile(CONFIG_PROPERTIES);
+        long        modified = file.lastModified();
         try{
             FileReader fr = loadFile(CONFIG_PROPERTIES); 
             prop.load(fr);
@@ -108,185 +140,106 @@ public class Config{
             throw new ConfigException(e);
         }
         
-        
-        /******************
-        *LOAD PATH CONFIGS
-        *******************/
-        
-        if(prop.containsKey("INDEX_DIR")){ 
-            INDEX_DIR = prop.getProperty("INDEX_DIR");
-        }
-        else{
-            throw new ConfigException();
-        }
-        
-        if(prop.containsKey("GERMANET_DIR")){ 
-            GERMANET_DIR = prop.getProperty("GERMANET_DIR");
-        }
-        else{
-            throw new ConfigException();
-        }
-        
-        if(prop.containsKey("GERMAN_STOPWORD_FILE")){ 
-            GERMAN_STOPWORD_FILE = prop.getProperty("GERMAN_STOPWORD_FILE");
-        }
-        else{
-            throw new ConfigException();
+        ConfigSnapshot snapshot = new ConfigSnapshot(prop);
+        try{
+            if(current == null){
+                initLoggers(snapshot);                                          //loggers are only initialized once
+            }else{
+                Logger.getLogger(Config.EVENT_LOGGER).setLevel(snapshot.LOGLEVEL);
+                warnRestartKeys(properties, prop);
+            }
+        }catch(IOException e){
+            throw new ConfigException(e);
         }
         
-        if(prop.containsKey("LOGPATH")){ 
-            LOGPATH = prop.getProperty("LOGPATH");
+        properties   = prop;
+        lastModified = modified;
+        current      = snapshot;                                                //publish new configuration
+        return snapshot;
+    }
+    
+    
+    /**
+     * Logs a warning naming the changed keys which are only read on startup,
+     * the new values of these keys are ignored until the next restart.
+     */
+    private static void warnRestartKeys(Properties old, Properties prop){
+        StringBuilder changed = new StringBuilder();
+        for(String key : RESTART_KEYS){
+            if(!value(old, key).equals(value(prop, key))){
+                changed.append(changed.length() == 0 ? "" : ", ").append(key);
+            }
         }
-        else{
-            throw new ConfigException();
+        if(changed.length() > 0){
+            Logger.getLogger(Config.EVENT_LOGGER).warn("changes of "+changed+" take effect after a restart.");
         }
-        
-        if(prop.containsKey("LOGLEVEL")){ 
-            String level = prop.getProperty("LOGLEVEL").toLowerCase();
-            if(level.equals("debug")){
-                LOGLEVEL = Level.DEBUG;
-            }
-            else if(level.equals("info")){
-                LOGLEVEL = Level.INFO;
-            }
-            else if(level.equals("warn")){
-                LOGLEVEL = Level.WARN;
-            }
-            else if(level.equals("error")){
-                LOGLEVEL = Level.ERROR;
+    }
+    
+    
+    private static String value(Properties prop, String key){
+        String value = prop.getProperty(key);
+        return value == null ? "" : value.trim();
+    }
+    
+    
+    /**
+     * Starts a background thread which reloads the configuration when the 
+     * property file was changed. An invalid property file is ignored and
+     * the current configuration is kept.
+     */
+    public static synchronized void startWatching(){
+        if(watcher != null) return;
+        watcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "fbrec-config-watcher");
+                thread.setDaemon(true);
+                return thread;
             }
-            else{
-                LOGLEVEL = Level.INFO;
+        });
+        watcher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try{
+                    if(getFile(CONFIG_PROPERTIES).lastModified() != lastModified){
+                        reloadConfig();
+                        Logger.getLogger(Config.EVENT_LOGGER).info("configuration reloaded.");
+                    }
+                }catch(ConfigException e){
+                    Logger.getLogger(Config.ERROR_LOGGER).error("Reloading configuration failed, keeping current configuration.", e);
+                }catch(RuntimeException e){
+                    Logger.getLogger(Config.ERROR_LOGGER).error("Reloading configuration failed, keeping current configuration.", e);
+                }
             }
-        }
-        else{
-            throw new ConfigException();
-        }
-                
-        if(prop.containsKey("POS_MODEL_FILE")){ 
-            POS_MODEL_FILE = FILEPATH+prop.getProperty("POS_MODEL_FILE");
-        }
-        else{
-            throw new ConfigException();
-        }
-        
-        
-        
-        /******************
-        *LOAD DETAIL CONFIG
-        *******************/
-        
-        if(prop.containsKey("DEFAULT_NUM_RESULTS")){ 
-            DEFAULT_NUM_RESULTS = Integer.parseInt(prop.getProperty("DEFAULT_NUM_RESULTS"));
-        }
-        else{
-            throw new ConfigException();
-        }
-        
-        if(prop.containsKey("DEFAULT_NUM_TAGS")){ 
-            DEFAULT_NUM_TAGS = Integer.parseInt(prop.getProperty("DEFAULT_NUM_TAGS"));
-        }
-        else{
-            throw new ConfigException();
-        }
-                
-        if(prop.containsKey("DEFAULT_AGE")){ 
-            DEFAULT_AGE = Integer.parseInt(prop.getProperty("DEFAULT_AGE"));
-        }
-        else{
-            throw new ConfigException();
-        }
-        
-        if(prop.containsKey("MAX_NUM_TAGS_PER_MODULE")){ 
-            MAX_NUM_TAGS_PER_MODULE = Integer.parseInt(prop.getProperty("MAX_NUM_TAGS_PER_MODULE"));
-        }
-        else{
-            throw new ConfigException();
-        }
-                                        
-        if(prop.containsKey("MIN_RESULTS_PER_QUERY")){ 
-            MIN_RESULTS_PER_QUERY = Integer.parseInt(prop.getProperty("MIN_RESULTS_PER_QUERY"));
-        }
-        else{
-            throw new ConfigException();
-        }
-        
-        if(prop.containsKey("MIN_TAG_SCORE_PERCENT")){ 
-            MIN_TAG_SCORE_PERCENT = Double.parseDouble(prop.getProperty("MIN_TAG_SCORE_PERCENT"));
-        }
-        else{
-            throw new ConfigException();
-        }        
-        
-        
-        
-        /******************
-        *LOAD WEIGHT CONFIGS
-        *******************/
-        
-        if(prop.containsKey("ENTERTAINMENT_WEIGHT")){ 
-            ENTERTAINMENT_WEIGHT = Double.parseDouble(prop.getProperty("ENTERTAINMENT_WEIGHT"));
-        }
-        else{
-            throw new ConfigException();
-        }
-        
-        if(prop.containsKey("BRANDS_WEIGHT")){ 
-            BRANDS_WEIGHT = Double.parseDouble(prop.getProperty("BRANDS_WEIGHT"));
-        }
-        else{
-            throw new ConfigException();
-        }
-        
-        if(prop.containsKey("TEXT_WEIGHT")){ 
-            TEXT_WEIGHT = Double.parseDouble(prop.getProperty("TEXT_WEIGHT"));
-        }
-        else{
-            throw new ConfigException();
-        }
-        
-        if(prop.containsKey("SPORTS_WEIGHT")){ 
-            SPORTS_WEIGHT = Double.parseDouble(prop.getProperty("SPORTS_WEIGHT"));
-        }
-        else{
-            throw new ConfigException();
-        }
-        
-        try{
-            initAnalyzer();
-            initLoggers();
-        }catch(IOException e){
-            throw new ConfigException(e);
-        }
-    }    
+        }, WATCH_INTERVAL, WATCH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
     
-    private static void initAnalyzer(){
-        //init default analyzer
-        CharArraySet stopWords;                                                 //list of stopword
-        try {
-            FileReader fr = loadFile(Config.GERMAN_STOPWORD_FILE);
-            stopWords  = WordlistLoader.getWordSet(fr, Version.LUCENE_40);
-            fr.close();
-        } catch (IOException ex) {
-            stopWords = GermanAnalyzer.getDefaultStopSet();
-        }        
-        DEFAULT_ANALYZER = new GermanAnalyzer(Version.LUCENE_40);               //set default analyzer
+    
+    /**
+     * Stops the background thread started by {@link #startWatching()}
+     */
+    public static synchronized void stopWatching(){
+        if(watcher != null){
+            watcher.shutdownNow();
+            watcher = null;
+        }
     }
     
+    
     /**
      * initialize loggers
      * @throws IOException 
      */
-    private static void initLoggers() throws IOException{
+    private static void initLoggers(ConfigSnapshot config) throws IOException{
         BasicConfigurator.resetConfiguration();        
         String date     = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss:S").format(new Date());
-        String path     = Config.FILEPATH+Config.LOGPATH;
+        String path     = Config.FILEPATH+config.LOGPATH;
         Layout layout   = new PatternLayout("%d{ABSOLUTE} [%t] %-5p %m%n");
         
         Logger events   = Logger.getLogger(Config.EVENT_LOGGER);
         events.addAppender(new FileAppender(layout, path+date+"_fbrec_"+Config.EVENT_LOGGER+".log"));
         events.addAppender(new ConsoleAppender(layout));
-        events.setLevel(LOGLEVEL);
+        events.setLevel(config.LOGLEVEL);
         
         Logger products = Logger.getLogger(Config.RESULT_LOGGER);
         products.addAppender(new FileAppender(layout, path+date+"_fbrec_"+Config.RESULT_LOGGER+".log"));
@@ -298,4 +251,4 @@ public class Config{
         error.setLevel(Level.ERROR);
    }
     
-}
\ No newline at end of file
+}
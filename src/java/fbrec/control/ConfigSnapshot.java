@@ -0,0 +1,172 @@
+package fbrec.control;
+
+import fbrec.error.ConfigException;
+import fbrec.util.SingleWordAnalyzer;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Properties;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.de.GermanAnalyzer;
+import org.apache.lucene.analysis.util.CharArraySet;
+import org.apache.lucene.analysis.util.WordlistLoader;
+import org.apache.lucene.util.Version;
+
+/**
+ * Immutable set of all values from the config properties file.
+ * A snapshot is never changed after creation, a reload of the configuration
+ * creates a new snapshot (see {@link Config}).
+ * @author Daniel
+ */
+public final class ConfigSnapshot {
+    //general constants
+    public final String    INDEX_DIR;
+    public final String    INDEX_DIRECTORY;
+    public final String    GERMANET_DIR;
+    public final String    GERMANET_SNAPSHOT;
+    public final String    GERMAN_STOPWORD_FILE;
+    public final String    POS_MODEL_FILE;
+    public final int       POS_TAGGER_POOL_SIZE;
+    public final String    LOGPATH;
+    public final Level     LOGLEVEL;
+
+    //parameters influencing the recommendation process
+    public final double    ENTERTAINMENT_WEIGHT;
+    public final double    TEXT_WEIGHT;
+    public final double    BRANDS_WEIGHT;
+    public final double    SPORTS_WEIGHT;
+    public final String    TEXT_MODULE;
+    public final String    MATCHING_MODE;
+    public final boolean   DEFER_TITLES;
+    public final boolean   PARALLEL_TAGGING;
+    public final int       TAGGING_THREADS;
+    public final long      MODULE_TIMEOUT;
+    public final long      REQUEST_TIMEOUT;
+    public final int       PROFILE_CACHE_SIZE;
+    public final int       PROFILE_CACHE_TTL;
+    public final String    PROFILE_SOURCE;
+    public final String    PROFILE_FIXTURE_DIR;
+    public final String    GRAPH_URL;
+    public final int       FACEBOOK_THREADS;
+    public final int       PROCESSING_THREADS;
+    public final int       MATCHING_THREADS;
+
+    //detail parameters
+    public final int       DEFAULT_NUM_RESULTS;
+    public final int       DEFAULT_NUM_TAGS;
+    public final int       DEFAULT_AGE;
+    public final int       MAX_NUM_TAGS_PER_MODULE;
+    public final int       MIN_RESULTS_PER_QUERY;
+    public final double    MIN_TAG_SCORE_PERCENT;
+
+    public final Analyzer  DEFAULT_ANALYZER;
+    public final CharArraySet GERMAN_STOPWORDS;                                 //content of the stop word file, loaded once
+    public final Analyzer  SINGLE_WORD_ANALYZER;                                //splits posts into single words, see TermMatrix
+
+
+    /**
+     * Creates a snapshot from the given properties
+     * @param prop
+     * @throws ConfigException if a required value is missing or invalid
+     */
+    public ConfigSnapshot(Properties prop) throws ConfigException{
+        try{
+            /******************
+            *LOAD PATH CONFIGS
+            *******************/
+            INDEX_DIR               = required(prop, "INDEX_DIR");
+            INDEX_DIRECTORY         = prop.getProperty("INDEX_DIRECTORY", "auto").trim().toLowerCase(); //optional, chosen by platform by default
+            GERMANET_DIR            = required(prop, "GERMANET_DIR");
+            GERMANET_SNAPSHOT       = prop.getProperty("GERMANET_SNAPSHOT");    //optional, xml files are used if not set
+            GERMAN_STOPWORD_FILE    = required(prop, "GERMAN_STOPWORD_FILE");
+            LOGPATH                 = required(prop, "LOGPATH");
+            LOGLEVEL                = Level.toLevel(required(prop, "LOGLEVEL"), Level.INFO);
+            POS_MODEL_FILE          = Config.FILEPATH+required(prop, "POS_MODEL_FILE");
+            POS_TAGGER_POOL_SIZE    = Integer.parseInt(prop.getProperty("POS_TAGGER_POOL_SIZE", //optional, defaults to number of processors
+                                                       String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+            /******************
+            *LOAD DETAIL CONFIG
+            *******************/
+            DEFAULT_NUM_RESULTS     = Integer.parseInt(required(prop, "DEFAULT_NUM_RESULTS"));
+            DEFAULT_NUM_TAGS        = Integer.parseInt(required(prop, "DEFAULT_NUM_TAGS"));
+            DEFAULT_AGE             = Integer.parseInt(required(prop, "DEFAULT_AGE"));
+            MAX_NUM_TAGS_PER_MODULE = Integer.parseInt(required(prop, "MAX_NUM_TAGS_PER_MODULE"));
+            MIN_RESULTS_PER_QUERY   = Integer.parseInt(required(prop, "MIN_RESULTS_PER_QUERY"));
+            MIN_TAG_SCORE_PERCENT   = Double.parseDouble(required(prop, "MIN_TAG_SCORE_PERCENT"));
+
+            /******************
+            *LOAD WEIGHT CONFIGS
+            *******************/
+            ENTERTAINMENT_WEIGHT    = Double.parseDouble(required(prop, "ENTERTAINMENT_WEIGHT"));
+            BRANDS_WEIGHT           = Double.parseDouble(required(prop, "BRANDS_WEIGHT"));
+            TEXT_WEIGHT             = Double.parseDouble(required(prop, "TEXT_WEIGHT"));
+            SPORTS_WEIGHT           = Double.parseDouble(required(prop, "SPORTS_WEIGHT"));
+            TEXT_MODULE             = prop.getProperty("TEXT_MODULE", "tfidf").toLowerCase(); //optional, tfidf module is used by default
+            MATCHING_MODE           = prop.getProperty("MATCHING_MODE", "pertag").trim().toLowerCase(); //optional, one query per tag by default
+            DEFER_TITLES            = Boolean.parseBoolean(prop.getProperty("DEFER_TITLES", "false").trim()); //optional, titles are loaded with the hits by default
+            PARALLEL_TAGGING        = Boolean.parseBoolean(prop.getProperty("PARALLEL_TAGGING", "false").trim()); //optional, modules are called sequentially by default
+            TAGGING_THREADS         = Integer.parseInt(prop.getProperty("TAGGING_THREADS",   //optional, defaults to number of processors
+                                                       String.valueOf(Runtime.getRuntime().availableProcessors())).trim());
+            MODULE_TIMEOUT          = Long.parseLong(prop.getProperty("MODULE_TIMEOUT", "0").trim()); //optional, no timeout by default
+            REQUEST_TIMEOUT         = Long.parseLong(prop.getProperty("REQUEST_TIMEOUT", "0").trim()); //optional, no deadline by default
+            PROFILE_CACHE_SIZE      = Integer.parseInt(prop.getProperty("PROFILE_CACHE_SIZE", "0").trim()); //optional, in MB, cache disabled by default
+            PROFILE_CACHE_TTL       = Integer.parseInt(prop.getProperty("PROFILE_CACHE_TTL", "600").trim()); //optional, in seconds
+            PROFILE_SOURCE          = prop.getProperty("PROFILE_SOURCE", "graph").trim().toLowerCase(); //optional, profiles are loaded from facebook by default
+            PROFILE_FIXTURE_DIR     = prop.getProperty("PROFILE_FIXTURE_DIR", "fixtures").trim(); //optional, only used by the fixtures source
+            GRAPH_URL               = prop.getProperty("GRAPH_URL", "https://graph.facebook.com/").trim(); //optional, may point to a local stand-in
+            
+            /******************
+            *LOAD POOL CONFIGS (asynchronous processing, all optional)
+            *******************/
+            int processors          = Runtime.getRuntime().availableProcessors();
+            FACEBOOK_THREADS        = Integer.parseInt(prop.getProperty("FACEBOOK_THREADS", String.valueOf(8*processors)).trim());
+            PROCESSING_THREADS      = Integer.parseInt(prop.getProperty("PROCESSING_THREADS", String.valueOf(processors)).trim());
+            MATCHING_THREADS        = Integer.parseInt(prop.getProperty("MATCHING_THREADS", String.valueOf(processors)).trim());
+        }catch(NumberFormatException e){
+            throw new ConfigException(e);
+        }
+        if(!Arrays.asList("auto", "mmap", "niofs", "simplefs", "ram").contains(INDEX_DIRECTORY)
+                || !Arrays.asList("pertag", "combined").contains(MATCHING_MODE)
+                || !Arrays.asList("graph", "fixtures").contains(PROFILE_SOURCE)){
+            throw new ConfigException();
+        }
+
+        DEFAULT_ANALYZER     = new GermanAnalyzer(Version.LUCENE_40);           //set default analyzer
+        GERMAN_STOPWORDS     = loadStopwords(GERMAN_STOPWORD_FILE);
+        SINGLE_WORD_ANALYZER = new SingleWordAnalyzer(GERMAN_STOPWORDS);
+    }
+
+
+    /**
+     * Loads the stop word list from the given file, the default list of the
+     * GermanAnalyzer is used if the file can not be read
+     */
+    private static CharArraySet loadStopwords(String file){
+        try{
+            FileReader fr = Config.loadFile(file);
+            try{
+                return CharArraySet.unmodifiableSet(WordlistLoader.getSnowballWordSet(fr, Version.LUCENE_40));
+            }finally{
+                fr.close();
+            }
+        }catch(IOException e){
+            Logger.getLogger(Config.EVENT_LOGGER).warn("Unable to open stop word list, using default instead", e);
+            return GermanAnalyzer.getDefaultStopSet();
+        }
+    }
+
+
+    /**
+     * Returns the trimmed value of the given property
+     * @throws ConfigException if the property is not set
+     */
+    private static String required(Properties prop, String key) throws ConfigException{
+        if(!prop.containsKey(key)){
+            throw new ConfigException();
+        }
+        return prop.getProperty(key).trim();
+    }
+}
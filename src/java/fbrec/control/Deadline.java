@@ -0,0 +1,80 @@
+package fbrec.control;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Time budget of a single recommendation process.
+ * The stages of the process check the deadline cooperatively and skip optional
+ * work once it is exceeded. Skipping marks the process as degraded, which is
+ * reported in the result. A deadline may be checked from several threads.
+ * @author Daniel
+ */
+public final class Deadline {
+    private final long          end;                                            //time in ms the budget ends, Long.MAX_VALUE = no limit
+    private volatile boolean    degraded;                                       //true if work was skipped
+
+    /**
+     * Creates a deadline starting now
+     * @param timeout   budget in ms, 0 or less for no limit
+     */
+    public Deadline(long timeout) {
+        this.end      = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+        this.degraded = false;
+    }
+
+
+    /**
+     * Returns true if the budget is used up
+     * @return
+     */
+    public boolean expired(){
+        return end != Long.MAX_VALUE && System.currentTimeMillis() >= end;
+    }
+
+
+    /**
+     * Returns the remaining budget in ms, Long.MAX_VALUE if there is no limit
+     * @return
+     */
+    public long remaining(){
+        if(end == Long.MAX_VALUE) return Long.MAX_VALUE;
+        return Math.max(end - System.currentTimeMillis(), 0);
+    }
+
+
+    /**
+     * Returns true if the budget is limited
+     * @return
+     */
+    public boolean limited(){
+        return end != Long.MAX_VALUE;
+    }
+
+
+    /**
+     * Checks if the given work should be skipped because the budget is used up.
+     * If so the process is marked as degraded.
+     * @param work  description of the work for logging
+     * @return true if the work should be skipped
+     */
+    public boolean skip(String work){
+        if(!expired()) return false;
+        degrade(work);
+        return true;
+    }
+
+
+    /**
+     * Marks the process as degraded
+     * @param reason    description of the skipped work for logging
+     */
+    public void degrade(String reason){
+        degraded = true;
+        Logger.getLogger(Config.EVENT_LOGGER).warn("process degraded, skipped: "+reason);
+    }
+
+
+    public boolean isDegraded() {
+        return degraded;
+    }
+}
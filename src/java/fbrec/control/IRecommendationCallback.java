@@ -0,0 +1,24 @@
+package fbrec.control;
+
+import fbrec.ranking.Ranking;
+
+/**
+ * Interface for receivers of asynchronously computed recommendations,
+ * see {@link RecommendationProcess#recommendAsync(RecommendationRequest, IRecommendationCallback)}.
+ * The methods are called on a thread of the shared pools, so they should not block.
+ * @author Daniel
+ */
+public interface IRecommendationCallback {
+    
+    /**
+     * Called with the result when the process finished
+     * @param ranking 
+     */
+    public void completed(Ranking ranking);
+    
+    /**
+     * Called when the process was aborted by the given exception
+     * @param e 
+     */
+    public void failed(Exception e);
+}
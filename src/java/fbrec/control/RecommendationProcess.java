@@ -18,16 +18,18 @@ import fbrec.tagging.Tagger;
 import fbrec.model.Recommendation;
 import fbrec.ranking.Ranking;
 import fbrec.tagging.module.BrandsModule;
-import fbrec.ranking.processing.RecDuplicateFilter;
-import fbrec.ranking.processing.RecListTrimmer;
-import fbrec.ranking.processing.ScoreRanker;
+import fbrec.ranking.processing.RecommendationAggregator;
 import fbrec.tagging.FbConnector;
 import fbrec.tagging.FbConnector.FbProfile;
+import fbrec.tagging.IProfileSource;
 import fbrec.tagging.module.SportsModule;
 import fbrec.tagging.module.PosTextModule;
 import fbrec.tagging.processing.TagListTrimmer;
 import fbrec.tagging.processing.TagDuplicateFilter;
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import legacy.TfIdfTextModule;
 import org.apache.log4j.Logger;
 
@@ -38,7 +40,9 @@ import org.apache.log4j.Logger;
  * @author Daniel
  */
 public class RecommendationProcess {
-    private String       accessToken;
+    private RecommendationRequest request;
+    private ConfigSnapshot config;
+    private IProfileSource source;
     private FbConnector  fbConnector;
     private Matcher      matcher;
     private Ranker       ranker;
@@ -46,49 +50,72 @@ public class RecommendationProcess {
     private int          numResults;
     private int          numTags;
     private FbProfile    fbProfile;
+    private Deadline     deadline;
 
     
     /**
      * Creates a new RecommendationProcess instance
      * and initializes it
      * 
-     * @param aAccessToken  Facebook access token used for authentication 
+     * @param request  parameters of the request, including the Facebook access token
      */
-    public RecommendationProcess(String accessToken) {
-        this.accessToken = accessToken;
-        this.fbConnector = new FbConnector(accessToken);
+    public RecommendationProcess(RecommendationRequest request) {
+        this(request, null);
+    }
+    
+    
+    /**
+     * Creates a new RecommendationProcess instance loading the profile from the given source
+     * 
+     * @param request  parameters of the request, including the Facebook access token
+     * @param source   source of the profile, null to use the configured source
+     */
+    public RecommendationProcess(RecommendationRequest request, IProfileSource source) {
+        this.request     = request;
+        this.source      = source;
         this.ranker      = new Ranker();
-        this.tagger      = new Tagger();
     }
     
     
     /**
-     * Adds the Modules used for recommendation computation
+     * Adds the Modules used for recommendation computation.
+     * The time budget of the request starts here, so time spent waiting for a
+     * pool does not count.
      */
-    public RecommendationProcess init(int numResults, int numTags) throws ConfigException, IOException{
-        //load configuration
-        Config.loadConfig();
+    public RecommendationProcess init() throws ConfigException, IOException{
+        //get configuration, kept for the whole request
+        config = Config.loadConfig();
+        
+        //budget starts with the first stage
+        deadline        = new Deadline(request.getTimeout());
+        fbConnector     = new FbConnector(request.getAccessToken(), deadline, source);
         
         //check if numResults is valid
-        this.numResults = (numResults > 0)  ? numResults    : Config.DEFAULT_NUM_RESULTS;
-        this.numTags    = (numTags > 0)     ? numTags       : Config.DEFAULT_NUM_TAGS;
+        this.numResults = (request.getNumResults() > 0)  ? request.getNumResults()  : config.DEFAULT_NUM_RESULTS;
+        this.numTags    = (request.getNumTags() > 0)     ? request.getNumTags()     : config.DEFAULT_NUM_TAGS;
         fbProfile       = fbConnector.getProfile();
-        this.matcher    = new Matcher(fbProfile, this.numResults);
+        this.matcher    = new Matcher(fbProfile, this.numResults, config);
+        this.tagger     = config.PARALLEL_TAGGING ? new Tagger(WorkerPools.tagging(), config.MODULE_TIMEOUT) : new Tagger();
+        RecommendationAggregator aggregator = new RecommendationAggregator(this.numResults);
+        matcher.setDeadline(deadline);
+        matcher.setAggregator(aggregator);                                      //hits are combined while matching
+        tagger.setDeadline(deadline);
         
         //add modules and processors
-        tagger.addModule(new EntertainmentModule(Config.ENTERTAINMENT_WEIGHT, Config.MAX_NUM_TAGS_PER_MODULE));
-        tagger.addModule(new BrandsModule(Config.BRANDS_WEIGHT, Config.MAX_NUM_TAGS_PER_MODULE));
-        tagger.addModule(new SportsModule(Config.SPORTS_WEIGHT, Config.MAX_NUM_TAGS_PER_MODULE));
-        //tagger.addModule(new PosTextModule(Config.TEXT_WEIGHT, Config.MAX_NUM_TAGS_PER_MODULE));
-        tagger.addModule(new TfIdfTextModule(Config.TEXT_WEIGHT, Config.MAX_NUM_TAGS_PER_MODULE));
-        tagger.addProcessor(new SemanticsEnhancer());
+        tagger.addModule(new EntertainmentModule(config.ENTERTAINMENT_WEIGHT, config.MAX_NUM_TAGS_PER_MODULE));
+        tagger.addModule(new BrandsModule(config.BRANDS_WEIGHT, config.MAX_NUM_TAGS_PER_MODULE));
+        tagger.addModule(new SportsModule(config.SPORTS_WEIGHT, config.MAX_NUM_TAGS_PER_MODULE));
+        if(config.TEXT_MODULE.equals("pos")){                                   //text analysis is optional, skipped when the deadline is exceeded
+            tagger.addModule(new PosTextModule(config.TEXT_WEIGHT, config.MAX_NUM_TAGS_PER_MODULE), true);
+        }else{
+            tagger.addModule(new TfIdfTextModule(config.TEXT_WEIGHT, config.MAX_NUM_TAGS_PER_MODULE), true);
+        }
+        tagger.addProcessor(new SemanticsEnhancer(), true);                     //optional, skipped when the deadline is exceeded
         tagger.addProcessor(new TagDuplicateFilter());
-        tagger.addProcessor(new TagMerger());
-        //tagger.addProcessor(new TresholdFilter(Config.MIN_TAG_SCORE_PERCENT, this.numTags));
+        tagger.addProcessor(new TagMerger(), true);
+        //tagger.addProcessor(new TresholdFilter(config.MIN_TAG_SCORE_PERCENT, this.numTags));
         tagger.addProcessor(new TagListTrimmer(this.numTags));
-        ranker.addProcessor(new RecDuplicateFilter());
-        ranker.addProcessor(new ScoreRanker());
-        ranker.addProcessor(new RecListTrimmer(this.numResults));
+        ranker.addProcessor(aggregator);                                        //removes duplicates, ranks and trims
         
         
         return this;
@@ -101,14 +128,58 @@ public class RecommendationProcess {
      * @return resultlist of recommendations
      */
     public Ranking getRecommendations() throws TaggingException, FacebookOAuthException, FacebookNetworkException, FacebookGraphException, PostProcessingException, MatchingException{
+        tag();
+        match();
+        return rank();
+    }
+    
+    
+    /**
+     * Computes the recommendations for the given request asynchronously.
+     * The stages run on separate shared pools: the Facebook requests on the
+     * facebook pool, tagging and tag processing on the processing pool and
+     * matching and ranking on the matching pool. The calling thread is not blocked.
+     * @param request   parameters of the request
+     * @param callback  receives the ranking or the exception which aborted the process
+     */
+    public static void recommendAsync(RecommendationRequest request, final IRecommendationCallback callback){
+        final RecommendationProcess process = new RecommendationProcess(request);
+        
+        runStage(WorkerPools.facebook(), callback, new Stage() {
+            @Override
+            public void run() throws Exception {
+                process.init();                                                 //loads the profile from facebook
+                runStage(WorkerPools.processing(), callback, new Stage() {
+                    @Override
+                    public void run() throws Exception {
+                        process.tag();
+                        runStage(WorkerPools.matching(), callback, new Stage() {
+                            @Override
+                            public void run() throws Exception {
+                                process.match();
+                                callback.completed(process.rank());
+                            }
+                        });
+                    }
+                });
+            }
+        });
+    }
+    
+    
+    /**
+     * Generates the tags for the profile and processes them
+     * @throws TaggingException
+     * @throws PostProcessingException 
+     */
+    protected void tag() throws TaggingException, PostProcessingException{
         //log process start
         Logger.getLogger(Config.EVENT_LOGGER).info("----------------------------------------");
         Logger.getLogger(Config.EVENT_LOGGER).info("---- RECOMMENDATION-PROCESS STARTED ----");
         Logger.getLogger(Config.EVENT_LOGGER).info("----------------------------------------");  
-        Logger.getLogger(Config.EVENT_LOGGER).info("accesstoken: "+accessToken);
+        Logger.getLogger(Config.EVENT_LOGGER).info("accesstoken: "+request.getAccessToken());
         Logger.getLogger(Config.EVENT_LOGGER).info("number of results: "+numResults);
         Logger.getLogger(Config.EVENT_LOGGER).info("number of tags: "+numTags);
-        Ranking result;
         
         //call modules
         Logger.getLogger(Config.EVENT_LOGGER).info("--- calling modules");
@@ -117,25 +188,50 @@ public class RecommendationProcess {
         //call tag post processing
         Logger.getLogger(Config.EVENT_LOGGER).info("--- calling tag postprocessors");
         tagger.processTags();
-        
-        //match products
+    }
+    
+    
+    /**
+     * Matches the processed tags to products
+     * @throws MatchingException 
+     */
+    protected void match() throws MatchingException{
         Logger.getLogger(Config.EVENT_LOGGER).info("--- starting matching process");
         matcher.matchTagsToProducts(tagger.getTags());
+    }
+    
+    
+    /**
+     * Ranks the matched products and creates the result
+     * @return
+     * @throws PostProcessingException
+     * @throws MatchingException 
+     */
+    protected Ranking rank() throws PostProcessingException, MatchingException{
+        Ranking result;
         
         //recommendation post processing
         Logger.getLogger(Config.EVENT_LOGGER).info("--- starting ranking");
-        ranker.processRecommendations(matcher.getRecommendations());
-        
-        result = ranker.getRanking();
+        try{
+            ranker.processRecommendations(matcher.getRecommendations());
+            
+            result = ranker.getRanking();
+            if(config.DEFER_TITLES){
+                matcher.loadTitles(result);                                     //titles only for the final recommendations
+            }
+        }finally{
+            matcher.release();                                                  //searcher kept by match() for deferred titles
+        }
         
         //logging
         for(Recommendation rec : result){
             Logger.getLogger(Config.RESULT_LOGGER).info(rec);
         }
         
-        //setting permissions & token
-        result.setAccessToken(accessToken);
+        //setting permissions, token & state
+        result.setAccessToken(request.getAccessToken());
         result.setPermissions(fbConnector.expectedPermissions());
+        result.setDegraded(deadline.isDegraded());
         
         //log process end
         Logger.getLogger(Config.EVENT_LOGGER).info("-----------------------------------------");
@@ -144,4 +240,36 @@ public class RecommendationProcess {
         
         return result;
     }
+    
+    
+    /**
+     * Runs the stage on the executor, exceptions are passed to the callback.
+     * Errors are passed wrapped in an ExecutionException, so the callback is
+     * called in any case. If the pool is saturated or shut down the stage is
+     * rejected and the callback receives the RejectedExecutionException.
+     */
+    private static void runStage(ExecutorService executor, final IRecommendationCallback callback, final Stage stage){
+        try{
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try{
+                        stage.run();
+                    }catch(Exception e){
+                        callback.failed(e);
+                    }catch(Throwable t){                                        //e.g. OutOfMemoryError, the request must not hang
+                        callback.failed(new ExecutionException(t));
+                    }
+                }
+            });
+        }catch(RejectedExecutionException e){                                  //queue full or pool shut down
+            callback.failed(e);
+        }
+    }
+    
+    
+    //step of the asynchronous process
+    private interface Stage {
+        void run() throws Exception;
+    }
 }
@@ -0,0 +1,42 @@
+package fbrec.control;
+
+/**
+ * Immutable parameters of a single recommendation request.
+ * Created per request and passed to the RecommendationProcess, so no request
+ * data is kept in shared objects like the servlet.
+ * @author Daniel
+ */
+public final class RecommendationRequest {
+    private final String  accessToken;                                          //Facebook access token used for authentication
+    private final int     numResults;                                           //number of requested results, <= 0 means default
+    private final int     numTags;                                              //number of tags used for matching, <= 0 means default
+    private final long    timeout;                                              //time budget in ms, <= 0 means no limit
+
+    public RecommendationRequest(String accessToken, int numResults, int numTags, long timeout) {
+        this.accessToken = accessToken;
+        this.numResults  = numResults;
+        this.numTags     = numTags;
+        this.timeout     = timeout;
+    }
+
+    public String getAccessToken() {
+        return accessToken;
+    }
+
+    public int getNumResults() {
+        return numResults;
+    }
+
+    public int getNumTags() {
+        return numTags;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public String toString() {
+        return "numResults="+numResults+", numTags="+numTags+", timeout="+timeout;
+    }
+}
@@ -0,0 +1,109 @@
+package fbrec.control;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Application wide thread pools shared by all requests.
+ * The pools are created on first use with the sizes from the configuration,
+ * their threads are daemon threads. The queue of each pool is bounded, so load
+ * can not pile up. If the queue of the tagging pool is full the submitting
+ * thread runs the module itself. The pools of the asynchronous processes reject
+ * tasks instead, because the submitting thread may be a container thread.
+ * @author Daniel
+ */
+public final class WorkerPools {
+    private static final int        QUEUE_SIZE_PER_THREAD = 64;                 //queued tasks per thread before tasks are run by the caller or rejected
+
+    private static ExecutorService  tagging;                                    //runs the tagging modules
+    private static ExecutorService  facebook;                                   //runs the facebook requests of asynchronous processes
+    private static ExecutorService  processing;                                 //runs tagging and tag processing of asynchronous processes
+    private static ExecutorService  matching;                                   //runs matching and ranking of asynchronous processes
+
+    private WorkerPools() {
+    }
+
+
+    /**
+     * Returns the pool running the tagging modules
+     * @return
+     */
+    public static synchronized ExecutorService tagging(){
+        if(tagging == null){
+            tagging = create("fbrec-tagging", Config.get().TAGGING_THREADS, new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        return tagging;
+    }
+
+
+    /**
+     * Returns the pool waiting for facebook, it is sized for blocking I/O
+     * @return
+     */
+    public static synchronized ExecutorService facebook(){
+        if(facebook == null){
+            facebook = create("fbrec-facebook", Config.get().FACEBOOK_THREADS, new ThreadPoolExecutor.AbortPolicy());
+        }
+        return facebook;
+    }
+
+
+    /**
+     * Returns the pool for the CPU bound tagging stage.
+     * It is separate from the tagging pool, because this stage waits for the modules.
+     * @return
+     */
+    public static synchronized ExecutorService processing(){
+        if(processing == null){
+            processing = create("fbrec-processing", Config.get().PROCESSING_THREADS, new ThreadPoolExecutor.AbortPolicy());
+        }
+        return processing;
+    }
+
+
+    /**
+     * Returns the pool for searching the index and ranking
+     * @return
+     */
+    public static synchronized ExecutorService matching(){
+        if(matching == null){
+            matching = create("fbrec-matching", Config.get().MATCHING_THREADS, new ThreadPoolExecutor.AbortPolicy());
+        }
+        return matching;
+    }
+
+
+    /**
+     * Stops all pools which were created, running tasks are interrupted
+     */
+    public static synchronized void shutdown(){
+        for(ExecutorService pool : new ExecutorService[]{tagging, facebook, processing, matching}){
+            if(pool != null) pool.shutdownNow();
+        }
+        tagging    = null;
+        facebook   = null;
+        processing = null;
+        matching   = null;
+    }
+
+
+    private static ExecutorService create(final String name, int threads, RejectedExecutionHandler rejectionPolicy){
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * QUEUE_SIZE_PER_THREAD),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger(0);
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, name+"-"+count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                },
+                rejectionPolicy);
+    }
+}
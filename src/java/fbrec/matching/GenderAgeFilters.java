@@ -0,0 +1,96 @@
+package fbrec.matching;
+
+import fbrec.database.Products;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.QueryWrapperFilter;
+
+/**
+ * Cache of the filters restricting products to the gender/age labels of a user.
+ * There is only a handful of label combinations, so one CachingWrapperFilter is
+ * kept per combination. The filters cache a bitset per index segment, segments
+ * are shared between reopened searchers, so only new segments are evaluated.
+ * The filters do not contribute to the score of a product.
+ * @author Daniel
+ */
+public class GenderAgeFilters {
+    private final ConcurrentMap<List<String>, Filter>   filters;                //label combination => filter
+    private final Analyzer                              analyzer;               //analyzer the index was created with
+
+    public GenderAgeFilters(Analyzer analyzer) {
+        this.filters  = new ConcurrentHashMap<List<String>, Filter>();
+        this.analyzer = analyzer;
+    }
+
+
+    /**
+     * Returns the labels matching a user with the given properties
+     * Labels are defined in Products
+     * @param adult
+     * @param male
+     * @param female
+     * @return
+     */
+    public static List<String> labels(boolean adult, boolean male, boolean female){
+        List<String> allowedLabels = new ArrayList<String>();
+
+        if(!adult && male)   allowedLabels.add(Products.LABEL_BOYS);
+        if(!adult && female) allowedLabels.add(Products.LABEL_GIRLS);
+        if(adult && male)    allowedLabels.add(Products.LABEL_MEN);
+        if(adult && female)  allowedLabels.add(Products.LABEL_WOMEN);
+
+        allowedLabels.add(Products.LABEL_UNDEFINED);                            //always accept undefined, unisex and baby
+        allowedLabels.add(Products.LABEL_UNISEX);
+        return allowedLabels;
+    }
+
+
+    /**
+     * Returns the filter for the given labels
+     * @param labels
+     * @return
+     * @throws IOException
+     */
+    public Filter get(List<String> labels) throws IOException{
+        Filter filter = filters.get(labels);
+        if(filter == null){
+            QueryBuilder builder = new QueryBuilder(analyzer);
+            filter = new CachingWrapperFilter(new QueryWrapperFilter(builder.restriction(labels, Products.GENDER_AGE_FIELD)));
+            Filter existing = filters.putIfAbsent(new ArrayList<String>(labels), filter);
+            if(existing != null) filter = existing;
+        }
+        return filter;
+    }
+
+
+    /**
+     * Fills the caches of all label combinations for the segments of the given searcher
+     * @param searcher
+     * @throws IOException
+     */
+    public void warm(IndexSearcher searcher) throws IOException{
+        Set<List<String>> combinations = new LinkedHashSet<List<String>>();
+        for(boolean adult : new boolean[]{true, false}){
+            combinations.add(labels(adult, true, false));
+            combinations.add(labels(adult, false, true));
+            combinations.add(labels(adult, false, false));
+        }
+
+        for(List<String> labels : combinations){
+            Filter filter = get(labels);
+            for(AtomicReaderContext leaf : searcher.getIndexReader().leaves()){
+                filter.getDocIdSet(leaf, leaf.reader().getLiveDocs());
+            }
+        }
+    }
+}
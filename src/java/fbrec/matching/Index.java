@@ -1,44 +1,54 @@
 package fbrec.matching;
 
-import fbrec.control.Config;
 import fbrec.database.Products;
 import java.io.IOException;
 import java.util.ArrayList;
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.FilteredQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopScoreDocCollector;
-import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.Version;
 
 /**
- * Represents a Lucene index and offers simplified access to search functionality
+ * Represents a Lucene index and offers simplified access to search functionality.
+ * Works on a searcher acquired from the {@link IndexManager}, the searcher is
+ * not closed by this class.
  * @author Daniel
  */
 public class Index {
-    private Directory           dir;                                            //Directory the index is created in
     private Analyzer            analyzer;                                       //Analyzer used for indexing
     private QueryParser         parser;                                         //Queryparser
-    private IndexReader         reader;                                         //Indexreader
     private IndexSearcher       searcher;                                       //Indexsearcher
+    private boolean             loadTitles;                                     //true if search results contain the product titles
     
     
     /**
-     * Sets up a new index creator for creating a index in given directory
-     * @param dir 
+     * Sets up a new index view on the given searcher
+     * @param searcher  searcher acquired from the IndexManager
+     * @param analyzer  analyzer used for parsing queries
      */
-    public Index(Directory directory) throws IOException {
-        dir         = directory;
-        analyzer    = Config.DEFAULT_ANALYZER;                                 //set default analyzer
-        parser      = new QueryParser(Version.LUCENE_40, Products.TEXT_FIELD, analyzer);//set parser
-        reader      = DirectoryReader.open(dir);
-        searcher    = new IndexSearcher(reader);
+    public Index(IndexSearcher searcher, Analyzer analyzer) {
+        this.searcher = searcher;
+        this.analyzer = analyzer;
+        this.loadTitles = true;
+        parser        = new QueryParser(Version.LUCENE_40, Products.TEXT_FIELD, analyzer);//set parser
+    }
+    
+    /**
+     * Sets whether search results contain the product title. Loading is
+     * cheaper without the title, it can be loaded later by {@link #title(int)}
+     * as long as the searcher is not released.
+     * @param loadTitles 
+     */
+    public void setLoadTitles(boolean loadTitles) {
+        this.loadTitles = loadTitles;
     }
     
     public void setAnalyzer(Analyzer analyzer) {
@@ -66,35 +76,113 @@ public class Index {
      * @throws IOException 
      */
     public ArrayList<SearchResult> search(Query query, int maxHits) throws ParseException, IOException{
+        return search(query, null, maxHits);
+    }
+    
+    
+    /**
+     * Performs a search with the given query, only documents accepted by the
+     * filter are returned. The filter does not influence the score.
+     * @param query
+     * @param filter    restriction of the results, may be null
+     * @param maxHits
+     * @return List of Top Lucene Documents from index that where found
+     * @throws ParseException
+     * @throws IOException 
+     */
+    public ArrayList<SearchResult> search(Query query, Filter filter, int maxHits) throws ParseException, IOException{
         //init vars
         ArrayList<SearchResult>     result      = new ArrayList<SearchResult>();
         TopScoreDocCollector        collector   = TopScoreDocCollector.create(maxHits, true);
         ScoreDoc[]  hits;
 
         //execute queries
-        searcher.search(query, collector);
+        search(query, filter, collector);
             
         //get hits
         hits = collector.topDocs().scoreDocs;
         
         //generate resultset
         for(ScoreDoc hit : hits){
-            result.add(new SearchResult(
-                                        searcher.doc(hit.doc),  //lucene document
-                                        hit.score
-                                       ));
+            result.add(result(hit));
         }
         return result;
     }
+    
+    
+    /**
+     * Performs a search with the given query, all hits accepted by the filter
+     * are passed to the collector. The filter is always applied as random
+     * access bits, so the scorer given to the collector is the one of the query.
+     * @param query
+     * @param filter    restriction of the results, may be null
+     * @param collector
+     * @throws IOException
+     */
+    public void search(Query query, Filter filter, Collector collector) throws IOException{
+        if(filter != null){
+            query = new FilteredQuery(searcher.rewrite(query), filter){         //rewritten before, a rewrite would drop the subclass
+                @Override
+                protected boolean useRandomAccess(Bits bits, int firstFilterDoc) {
+                    return true;
+                }
+            };
+        }
+        searcher.search(query, collector);
+    }
+
+
+    /**
+     * Returns the sum of squared weights of the given query, the value lucene
+     * derives the query normalization from.
+     * @param query
+     * @return
+     * @throws IOException
+     */
+    public float sumOfSquaredWeights(Query query) throws IOException{
+        return searcher.rewrite(query).createWeight(searcher).getValueForNormalization();
+    }
+
+
+    /**
+     * Creates the search result for the given hit, only the product id and
+     * (if enabled) the title are read from the stored fields.
+     * @param hit
+     * @return
+     * @throws IOException
+     */
+    public SearchResult result(ScoreDoc hit) throws IOException{
+        ProductFieldVisitor visitor = new ProductFieldVisitor(loadTitles);
+        searcher.doc(hit.doc, visitor);
+        return new SearchResult(hit.doc, visitor.getProductID(), visitor.getTitle(), hit.score);
+    }
+    
+    
+    /**
+     * Returns the title of the product with the given lucene document id, the
+     * id must be taken from a search result of this index.
+     * @param doc   document id, see {@link SearchResult#doc}
+     * @return
+     * @throws IOException
+     */
+    public String title(int doc) throws IOException{
+        ProductFieldVisitor visitor = new ProductFieldVisitor(true);
+        searcher.doc(doc, visitor);
+        return visitor.getTitle();
+    }
         
     
     //SearchResult class for aggregation result information
     public class SearchResult {
-        public Document doc;
+        public int      doc;                                                    //lucene document id, only valid for the searcher of this index
+        public int      productID;
+        public String   title;                                                  //null if titles are not loaded
         public double   score;
 
-        public SearchResult(Document doc, double score) {
+        public SearchResult(int doc, int productID, String title, double score) {
             this.doc                = doc;
+            this.productID          = productID;
+            this.title              = title;
             this.score              = score;
         }
     }
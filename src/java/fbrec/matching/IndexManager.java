@@ -0,0 +1,183 @@
+package fbrec.matching;
+
+import fbrec.control.Config;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.store.SimpleFSDirectory;
+import org.apache.lucene.util.Constants;
+
+/**
+ * Application wide holder of the product index.
+ * The index is opened once and shared by all requests through a SearcherManager.
+ * A background thread periodically checks the index directory for new segments
+ * written by the DbIndexer and reopens the searcher, running requests keep the
+ * searcher they acquired.
+ * The directory implementation is chosen by the INDEX_DIRECTORY setting, see
+ * {@link #openDirectory(File, String)}.
+ * @author Daniel
+ */
+public class IndexManager {
+    private static IndexManager instance;                                       //shared instance, created on first use
+
+    private final Directory                 directory;                          //directory the index is located in
+    private final GenderAgeFilters          genderAgeFilters;                   //cached gender/age restrictions
+    private final SearcherManager           searcherManager;                    //manages the shared searchers
+    private final ScheduledExecutorService  refresher;                          //reopens the searcher on index changes
+
+    private IndexManager(Directory directory) throws IOException {
+        this.directory        = directory;
+        this.genderAgeFilters = new GenderAgeFilters(Config.get().DEFAULT_ANALYZER);
+        this.searcherManager  = new SearcherManager(directory, new SearcherFactory() {
+            @Override
+            public IndexSearcher newSearcher(IndexReader reader) throws IOException {
+                IndexSearcher searcher = new IndexSearcher(reader);
+                genderAgeFilters.warm(searcher);                                //fill filter caches before the searcher is used
+                return searcher;
+            }
+        });
+        this.refresher        = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "fbrec-index-refresher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.refresher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, Config.INDEX_REFRESH_INTERVAL, Config.INDEX_REFRESH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Returns the shared instance, opening the configured index when called for the first time
+     * @return
+     * @throws IOException
+     */
+    public static synchronized IndexManager getInstance() throws IOException{
+        if(instance == null){
+            Directory dir = openDirectory(Config.getFile(Config.get().INDEX_DIR), Config.get().INDEX_DIRECTORY);
+            instance = new IndexManager(dir);
+            Logger.getLogger(Config.EVENT_LOGGER).info("index opened: "+dir);
+        }
+        return instance;
+    }
+
+
+    /**
+     * Opens the index located at the given path with the given directory implementation:
+     * <ul>
+     * <li>mmap - MMapDirectory, index files are mapped into virtual memory and cached by the OS</li>
+     * <li>niofs - NIOFSDirectory, positional reads without synchronization (slow on Windows)</li>
+     * <li>simplefs - SimpleFSDirectory, reads synchronized on the file</li>
+     * <li>ram - the whole index is copied into a RAMDirectory, only suitable for small
+     *     indexes since it lives on the heap; later index changes are not seen until restart</li>
+     * <li>auto - mmap on 64bit JVMs supporting unmapping, simplefs on Windows and niofs otherwise</li>
+     * </ul>
+     * @param path  folder the index is located in
+     * @param type  one of the names above
+     * @return
+     * @throws IOException
+     */
+    public static Directory openDirectory(File path, String type) throws IOException{
+        if(type.equals("auto")){
+            if(Constants.JRE_IS_64BIT && MMapDirectory.UNMAP_SUPPORTED)    type = "mmap";
+            else if(Constants.WINDOWS)                                      type = "simplefs";
+            else                                                            type = "niofs";
+        }
+
+        if(type.equals("mmap"))      return new MMapDirectory(path);
+        if(type.equals("niofs"))     return new NIOFSDirectory(path);
+        if(type.equals("simplefs"))  return new SimpleFSDirectory(path);
+        if(type.equals("ram")){
+            FSDirectory source = FSDirectory.open(path);
+            try{
+                long start     = System.currentTimeMillis();
+                Directory copy = new RAMDirectory(source, IOContext.READONCE);
+                Logger.getLogger(Config.EVENT_LOGGER).info("index copied into ram in "+(System.currentTimeMillis()-start)+"ms");
+                return copy;
+            }finally{
+                source.close();
+            }
+        }
+        throw new IllegalArgumentException("unknown index directory type: "+type);
+    }
+
+
+    /**
+     * Closes the shared instance if it was opened
+     * @throws IOException
+     */
+    public static synchronized void shutdown() throws IOException{
+        if(instance != null){
+            instance.close();
+            instance = null;
+        }
+    }
+
+
+    /**
+     * Returns the current searcher. Each acquired searcher must be given back
+     * with {@link #release(IndexSearcher)}, best in a finally block.
+     * @return
+     */
+    public IndexSearcher acquire(){
+        return searcherManager.acquire();
+    }
+
+
+    /**
+     * Returns the gender/age filters, which are warmed for each new searcher
+     * @return
+     */
+    public GenderAgeFilters getGenderAgeFilters(){
+        return genderAgeFilters;
+    }
+
+
+    /**
+     * Gives back a searcher obtained by {@link #acquire()}
+     * @param searcher
+     * @throws IOException
+     */
+    public void release(IndexSearcher searcher) throws IOException{
+        searcherManager.release(searcher);
+    }
+
+
+    /**
+     * Reopens the searcher if the index was changed
+     */
+    protected void refresh(){
+        try{
+            searcherManager.maybeRefresh();
+        }catch(IOException e){
+            Logger.getLogger(Config.ERROR_LOGGER).error("Refreshing the index failed, keeping current searcher.", e);
+        }
+    }
+
+
+    private void close() throws IOException{
+        refresher.shutdownNow();
+        searcherManager.close();
+        directory.close();
+    }
+}
@@ -3,7 +3,10 @@ package fbrec.matching;
 import fbrec.model.Recommendation;
 import fbrec.error.MatchingException;
 import fbrec.control.Config;
+import fbrec.control.ConfigSnapshot;
+import fbrec.control.Deadline;
 import fbrec.matching.Index.SearchResult;
+import fbrec.ranking.processing.RecommendationAggregator;
 import fbrec.database.Products;
 import fbrec.tagging.FbConnector.FbProfile;
 import fbrec.tagging.FbConnector.FbUser;
@@ -15,12 +18,14 @@ import java.util.Calendar;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.apache.log4j.Logger;
 import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.SimpleFSDirectory;
+import org.apache.lucene.search.ScoreDoc;
 
 /**
  *
@@ -30,30 +35,78 @@ public class Matcher {
     private FbProfile               profile;
     private HashMap<Query, Tag>     queryTag;
     private Index                   index;
+    private IndexSearcher           searcher;                                   //searcher kept for deferred titles, null if released
+    private Map<Integer, Integer>   docIDs;                                     //product id => lucene doc id in searcher, for deferred titles
     private List<Recommendation>    recommendations;
     private int                     numResults;
+    private ConfigSnapshot          config;
+    private Deadline                deadline;
+    private RecommendationAggregator aggregator;                                //receives the hits if set, instead of the recommendation list
     
-    public Matcher(FbProfile profile, int numResults) {
+    public Matcher(FbProfile profile, int numResults, ConfigSnapshot config) {
         this.profile  = profile;
         this.numResults = numResults;
+        this.config   = config;
+        this.deadline = new Deadline(0);
         queryTag   = new HashMap<Query, Tag>();
+        docIDs     = new HashMap<Integer, Integer>();
         recommendations = new ArrayList<Recommendation>();
     }
     
     
+    /**
+     * Sets the time budget. When it is exceeded no further queries are executed.
+     * @param deadline 
+     */
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+    
+    
+    /**
+     * Sets the aggregator receiving the hits while they are found. Duplicates
+     * are combined immediately then, the recommendation list stays empty.
+     * @param aggregator 
+     */
+    public void setAggregator(RecommendationAggregator aggregator) {
+        this.aggregator = aggregator;
+    }
+    
+    
     /**
      * Matches the given list of tags to products in the index.
+     * If titles are deferred (DEFER_TITLES) the searcher is kept for
+     * {@link #loadTitles(List)} and must be given back by {@link #release()}.
      * @param tags
      * @return
      * @throws MatchingException 
      */
     public void matchTagsToProducts(List<Tag> tags) throws MatchingException{
+        IndexManager  indexManager;
+        IndexSearcher searcher;
+        Filter        restriction;
+        boolean       keep          = false;                                    //true if the searcher is kept for the titles
         try{
-            //open index
-            Directory dir   = new SimpleFSDirectory(Config.getFile(Config.INDEX_DIR));
-            index           = new Index(dir);
-            
-            recommendations = matchProducts(getQueries(tags));           
+            //get shared index
+            indexManager    = IndexManager.getInstance();
+            restriction     = indexManager.getGenderAgeFilters().get(getGenderAgeLabels());
+            searcher        = indexManager.acquire();
+            try{
+                index           = new Index(searcher, config.DEFAULT_ANALYZER);
+                index.setLoadTitles(!config.DEFER_TITLES);
+                if(config.MATCHING_MODE.equals("combined")){
+                    recommendations = matchProductsCombined(tags, restriction);
+                }else{
+                    recommendations = matchProducts(getQueries(tags), restriction);
+                }
+                keep = config.DEFER_TITLES;
+            }finally{
+                if(keep){
+                    this.searcher = searcher;
+                }else{
+                    indexManager.release(searcher);
+                }
+            }
         }catch(Exception e){
             throw new MatchingException(e);
         }
@@ -61,81 +114,44 @@ public class Matcher {
     
     
     /**
-     * Returns a list of queries for given list of tags
+     * Returns a list of queries for given list of tags, one query per tag.
+     * The clauses of a tag are created once and shared by all queries.
      * @param tags
      * @return
-     * @throws java.text.ParseException
      * @throws IOException
-     * @throws ParseException 
      */
-    protected List<Query> getQueries(List<Tag> tags) throws java.text.ParseException, IOException, ParseException{
-        List<String>    genderAge   = getGenderAgeLabels();
+    protected List<Query> getQueries(List<Tag> tags) throws IOException{
         List<Query>     queries     = new ArrayList<Query>();
+        QueryBuilder    builder     = new QueryBuilder(config.DEFAULT_ANALYZER);
         Query           query;
-        Tag             mainTag;
-        Tag             tag2;
         
-        String str;
-        for(int i = 0; i < tags.size(); i++){
-            mainTag = tags.get(i);
-            str = "+("+orQuery(mainTag.text)+")";
-            str+= queryRestriction(genderAge, Products.GENDER_AGE_FIELD);
-            for(int k = 0; k < tags.size(); k++){
-                if(i == k) continue;
-                tag2 = tags.get(k);
-                str += " "+orQuery(tag2.text);
-            }
-            for(String word : mainTag.wordPool){
-                str += " "+orQuery(word);
-            }
-            
-            query   = index.stringToQuery(str);
+        for(Tag mainTag : tags){
+            query   = builder.tagQuery(mainTag, tags);
             queryTag.put(query, mainTag);
             queries.add(query);
         }
         return queries;
     }
-    
-    protected String orQuery(String value){
-        String result;
-        String title = Products.TITLE_FIELD+":\""+value+"\"";
-        String descr = Products.TEXT_FIELD+":\""+value+"\"";
-        String brand = Products.BRAND_FIELD+":\""+value+"\"";
-        String cat   = Products.CATEGORY_FIELD+":\""+value+"\"";
-        result = title+" "+descr+" "+brand+" "+cat;
-        return result;
-    }
      
     
     /**
      * Execute the search with the given List of queries.
      * The queries are combined into one resultset.
-     * @param queries   the search queries
+     * @param queries       the search queries
+     * @param restriction   gender/age filter applied to all queries
      * @return List of recommendations as result of the search
      * @throws IOException
      * @throws ParseException 
      */
-    protected List<Recommendation> matchProducts(List<Query> queries) throws IOException, ParseException, MatchingException{
+    protected List<Recommendation> matchProducts(List<Query> queries, Filter restriction) throws IOException, ParseException, MatchingException{
         //init vars
         List<Recommendation>    result = new ArrayList<Recommendation>();       //result list
         List<SearchResult>      searchResults;                                  //search result
-        Set<String>             modules;
-        Set<String>             fields;
-        Recommendation          rec;                                            //recommendation object for result transformation
-        double                  scoreMulti;
-        int                     resultsPerQuery;
-        int                     resultsNeeded;
-        resultsNeeded   = (int) Math.ceil((double)numResults/(double)queries.size());
-        resultsPerQuery = Math.max((int)  resultsNeeded, Config.MIN_RESULTS_PER_QUERY);
+        int                     resultsPerQuery = resultsPerQuery(queries.size());
         
         for(Query query : queries){
-            searchResults   = index.search(query, resultsPerQuery);
-            modules         = new HashSet<String>();
-            fields          = new HashSet<String>();
-            
-            modules.addAll(queryTag.get(query).source);
-            fields.addAll(queryTag.get(query).base);
-            scoreMulti = queryTag.get(query).score;
+            if(hasResults(result) && deadline.skip("remaining tag queries")) break;  //tags are ordered, the best ones are matched first
+            searchResults   = index.search(query, restriction, resultsPerQuery);
             
             //logging
             if(searchResults.isEmpty()){
@@ -145,23 +161,109 @@ public class Matcher {
                 Logger.getLogger(Config.EVENT_LOGGER).debug(query);
             }
             
-            //transform doc list to recommendation list - docs & scores lists are orderd in the same way
-            for(SearchResult sr : searchResults){
-                rec = new Recommendation(Integer.parseInt(sr.doc.get(Products.ID_FIELD)),
-                                         sr.doc.get(Products.TITLE_FIELD),
-                                         0,                                    
-                                         sr.score*scoreMulti,
-                                         modules,
-                                         fields);                              
-
-                result.add(rec);
-                Logger.getLogger(Config.EVENT_LOGGER).debug("new recommendation: "+rec);
+            addRecommendations(result, searchResults, queryTag.get(query));
+        }
+        return result;
+    }
+    
+    
+    /**
+     * Executes one combined query for all tags instead of one query per tag.
+     * The hits are attributed to the tags whose text they contain by a
+     * {@link TagCollector}, the result contains the same per tag recommendations
+     * as {@link #matchProducts(List, Filter)}.
+     * @param tags
+     * @param restriction   gender/age filter
+     * @return List of recommendations as result of the search
+     * @throws IOException 
+     */
+    protected List<Recommendation> matchProductsCombined(List<Tag> tags, Filter restriction) throws IOException{
+        List<Recommendation>    result      = new ArrayList<Recommendation>();
+        List<SearchResult>      searchResults;
+        QueryBuilder            builder     = new QueryBuilder(config.DEFAULT_ANALYZER);
+        Query[]                 mainQueries = new Query[tags.size()];
+        Query[]                 poolQueries = new Query[tags.size()];
+        Query                   query;
+        TagCollector            collector;
+        
+        //build combined query: one of the tags required, wordPools optional
+        for(int i = 0; i < tags.size(); i++){
+            mainQueries[i] = builder.mainQuery(tags.get(i));
+            poolQueries[i] = builder.poolQuery(tags.get(i));
+        }
+        query = builder.combinedQuery(mainQueries, poolQueries);
+        Logger.getLogger(Config.EVENT_LOGGER).debug(query);
+        
+        //search once, attribute hits to tags
+        collector = new TagCollector(index, mainQueries, poolQueries, resultsPerQuery(tags.size()));
+        index.search(query, restriction, collector);
+        
+        for(int i = 0; i < tags.size(); i++){
+            searchResults = new ArrayList<SearchResult>();
+            for(ScoreDoc hit : collector.topDocs(i)){
+                searchResults.add(index.result(hit));
+            }
+            if(searchResults.isEmpty()){
+                Logger.getLogger(Config.EVENT_LOGGER).warn("Tag '"+tags.get(i).text+"' did not match any product.");
             }
+            addRecommendations(result, searchResults, tags.get(i));
         }
         return result;
     }
     
     
+    /**
+     * Returns the number of results each tag query should return
+     * @param numQueries
+     * @return 
+     */
+    protected int resultsPerQuery(int numQueries){
+        int resultsNeeded = (int) Math.ceil((double)numResults/(double)numQueries);
+        return Math.max(resultsNeeded, config.MIN_RESULTS_PER_QUERY);
+    }
+    
+    
+    /**
+     * Returns true if hits were found already, in the list or the aggregator
+     */
+    private boolean hasResults(List<Recommendation> result){
+        return !result.isEmpty() || (aggregator != null && aggregator.size() > 0);
+    }
+    
+    
+    /**
+     * Transforms the search results of the given tag to recommendations and
+     * adds them to the result list or the aggregator
+     * @param result
+     * @param searchResults
+     * @param tag 
+     */
+    private void addRecommendations(List<Recommendation> result, List<SearchResult> searchResults, Tag tag){
+        Set<String>     modules = new HashSet<String>(tag.source);
+        Set<String>     fields  = new HashSet<String>(tag.base);
+        double          scoreMulti = tag.score;
+        Recommendation  rec;                                                    //recommendation object for result transformation
+        
+        //transform doc list to recommendation list - docs & scores lists are orderd in the same way
+        for(SearchResult sr : searchResults){
+            if(aggregator != null){                                             //stream hit, no recommendation per hit
+                aggregator.add(sr.productID, sr.title, sr.score*scoreMulti, modules, fields);
+                continue;
+            }
+            rec = new Recommendation(sr.productID,
+                                     sr.title,
+                                     0,                                    
+                                     sr.score*scoreMulti,
+                                     modules,
+                                     fields);                              
+
+            result.add(rec);
+            if(sr.title == null) docIDs.put(sr.productID, sr.doc);
+            Logger.getLogger(Config.EVENT_LOGGER).debug("new recommendation: "+rec);
+        }
+    }
+    
+    
     /**
      * Converts the given birthday string to a age (integer)
      * @param birthday
@@ -170,8 +272,8 @@ public class Matcher {
      */
     protected int birthdayToAge(String birthday) throws java.text.ParseException{
         if(birthday == null || birthday.equals("null")){
-            Logger.getLogger(Config.EVENT_LOGGER).warn("Users age not specified, using default age: "+ Config.DEFAULT_AGE);
-            return Config.DEFAULT_AGE;
+            Logger.getLogger(Config.EVENT_LOGGER).warn("Users age not specified, using default age: "+ config.DEFAULT_AGE);
+            return config.DEFAULT_AGE;
         }
         
         SimpleDateFormat dateFormat      = new SimpleDateFormat("DD/MM/yyyy");
@@ -205,7 +307,7 @@ public class Matcher {
      * @param age 
      */
     protected List<String> getGenderAgeLabels() throws java.text.ParseException{
-        ArrayList<String> allowedLabels = new ArrayList<String>();
+        List<String> allowedLabels;
         FbUser user     = profile.user();
         
         int     age   = birthdayToAge(user.birthday);
@@ -218,13 +320,7 @@ public class Matcher {
             Logger.getLogger(Config.EVENT_LOGGER).warn("Users gender not specified.");
         }
         
-        if(!adult && male)   allowedLabels.add(Products.LABEL_BOYS);
-        if(!adult && female)  allowedLabels.add(Products.LABEL_GIRLS);
-        if(adult && male)    allowedLabels.add(Products.LABEL_MEN);
-        if(adult && female)   allowedLabels.add(Products.LABEL_WOMEN);
-        
-        allowedLabels.add(Products.LABEL_UNDEFINED);                            //always accept undefined, unisex and baby
-        allowedLabels.add(Products.LABEL_UNISEX);
+        allowedLabels = GenderAgeFilters.labels(adult, male, female);
         
         //logging
         for(String label: allowedLabels){
@@ -236,22 +332,46 @@ public class Matcher {
     
     
     /**
-     * Restricts the allowed values for the given field in given query.
-     * @param query     the query to that the restriction should be added
-     * @param values    the values that are allowed for the field
-     * @param field     the field the restriction is applied to
-     * @return 
-     */    
-    protected String queryRestriction(List<String> values, String field){
-        String str;
-        str = " +(";
-        for(String label : values){
-            str += " "+field+":"+label;
+     * Loads the missing titles of the given recommendations. Used when title
+     * loading is deferred (DEFER_TITLES), so only the titles of the final
+     * recommendations are read from the index. The titles are read by document
+     * id from the searcher the products were found with.
+     * @param recs
+     * @throws MatchingException 
+     */
+    public void loadTitles(List<Recommendation> recs) throws MatchingException{
+        Integer doc;
+        if(searcher == null) return;
+        try{
+            for(Recommendation rec : recs){
+                doc = docIDs.get(rec.getProductID());
+                if(rec.getTitle() == null && doc != null){
+                    rec.setTitle(index.title(doc));
+                }
+            }
+        }catch(IOException e){
+            throw new MatchingException(e);
         }
-        str += ")";
-        return str;
     }
-
+    
+    
+    /**
+     * Gives back the searcher kept for deferred titles, does nothing if it
+     * was already released or not kept.
+     * @throws MatchingException 
+     */
+    public void release() throws MatchingException{
+        if(searcher == null) return;
+        try{
+            IndexManager.getInstance().release(searcher);
+        }catch(IOException e){
+            throw new MatchingException(e);
+        }finally{
+            searcher = null;
+        }
+    }
+    
+    
     public List<Recommendation> getRecommendations() {
         return recommendations;
     }
@@ -0,0 +1,64 @@
+package fbrec.matching;
+
+import fbrec.database.Products;
+import java.io.IOException;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.StoredFieldVisitor;
+
+/**
+ * Loads only the stored fields of a product that are needed for a recommendation:
+ * the product id and optionally the title. All other fields are skipped and
+ * visiting stops as soon as the needed fields are read.
+ * @author Daniel
+ */
+public class ProductFieldVisitor extends StoredFieldVisitor {
+    private final boolean   loadTitle;                                          //true if the title should be loaded
+    private int             productID;                                          //loaded product id
+    private String          title;                                              //loaded title, null if not loaded
+    private boolean         idLoaded;                                           //true if the id was read
+
+    /**
+     * @param loadTitle     true if the title should be loaded besides the id
+     */
+    public ProductFieldVisitor(boolean loadTitle) {
+        this.loadTitle = loadTitle;
+    }
+
+    @Override
+    public Status needsField(FieldInfo fieldInfo) throws IOException {
+        if(idLoaded && (!loadTitle || title != null)) return Status.STOP;      //everything needed is read
+        if(fieldInfo.name.equals(Products.ID_FIELD)) return Status.YES;
+        if(loadTitle && fieldInfo.name.equals(Products.TITLE_FIELD)) return Status.YES;
+        return Status.NO;
+    }
+
+    @Override
+    public void stringField(FieldInfo fieldInfo, String value) throws IOException {
+        if(fieldInfo.name.equals(Products.ID_FIELD)){
+            productID = Integer.parseInt(value);
+            idLoaded  = true;
+        }else{
+            title = value;
+        }
+    }
+
+    @Override
+    public void intField(FieldInfo fieldInfo, int value) throws IOException {
+        productID = value;
+        idLoaded  = true;
+    }
+
+    @Override
+    public void longField(FieldInfo fieldInfo, long value) throws IOException {
+        productID = (int) value;
+        idLoaded  = true;
+    }
+
+    public int getProductID() {
+        return productID;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+}
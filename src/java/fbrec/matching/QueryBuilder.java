@@ -0,0 +1,235 @@
+package fbrec.matching;
+
+import fbrec.database.Products;
+import fbrec.model.Tag;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+/**
+ * Creates the product queries for a list of tags without going through the QueryParser.
+ * Each distinct text (tag, wordPool word or label) is analyzed only once and
+ * the resulting field queries are shared by all queries built by this instance.
+ * The queries are equal to the ones the classic QueryParser creates for
+ * field:"text" clauses, so scoring is unchanged.
+ * A builder is meant to be used for a single request, it is not thread-safe.
+ * @author Daniel
+ */
+public class QueryBuilder {
+    private static final String[]       FIELDS = {Products.TITLE_FIELD,         //fields a text is searched in
+                                                  Products.TEXT_FIELD,
+                                                  Products.BRAND_FIELD,
+                                                  Products.CATEGORY_FIELD};
+
+    private final Analyzer                      analyzer;                       //analyzer the index was created with
+    private final Map<String, List<Query>>      fieldQueries;                   //text => one query per field
+
+    public QueryBuilder(Analyzer analyzer) {
+        this.analyzer     = analyzer;
+        this.fieldQueries = new HashMap<String, List<Query>>();
+    }
+
+
+    /**
+     * Creates the query for the given main tag. Matching documents must contain
+     * the main tag in one of the fields, all other tags and the wordPool of the
+     * main tag are optional and raise the score.
+     * @param mainTag       tag the query is created for
+     * @param tags          all tags of the profile, including the main tag
+     * @return
+     * @throws IOException
+     */
+    public Query tagQuery(Tag mainTag, List<Tag> tags) throws IOException{
+        BooleanQuery query   = new BooleanQuery();
+
+        query.add(mainQuery(mainTag), Occur.MUST);
+
+        for(Tag tag : tags){
+            if(tag == mainTag) continue;
+            addOptional(query, tag.text);
+        }
+        for(String word : mainTag.wordPool){
+            addOptional(query, word);
+        }
+        return query;
+    }
+
+
+    /**
+     * Creates a query matching the text of the tag in any of the product fields
+     * @param tag
+     * @return
+     * @throws IOException
+     */
+    public BooleanQuery mainQuery(Tag tag) throws IOException{
+        BooleanQuery query = new BooleanQuery();
+        addOptional(query, tag.text);
+        return query;
+    }
+
+
+    /**
+     * Creates a query matching any word of the wordPool of the tag in any of
+     * the product fields.
+     * @param tag
+     * @return the query or null if the wordPool does not produce any clause
+     * @throws IOException
+     */
+    public BooleanQuery poolQuery(Tag tag) throws IOException{
+        BooleanQuery query = new BooleanQuery();
+        for(String word : tag.wordPool){
+            addOptional(query, word);
+        }
+        return query.clauses().isEmpty() ? null : query;
+    }
+
+
+    /**
+     * Creates one query for all tags: one of the main queries is required, the
+     * pool queries are optional. The hits are attributed to the tags by a
+     * {@link TagCollector}.
+     * @param mainQueries   main query of each tag, see {@link #mainQuery(Tag)}
+     * @param poolQueries   pool query of each tag, null if a tag has none
+     * @return
+     */
+    public Query combinedQuery(Query[] mainQueries, Query[] poolQueries){
+        BooleanQuery query = new BooleanQuery();
+        BooleanQuery mains = new BooleanQuery();
+        for(int i = 0; i < mainQueries.length; i++){
+            mains.add(mainQueries[i], Occur.SHOULD);
+            if(poolQueries[i] != null) query.add(poolQueries[i], Occur.SHOULD);
+        }
+        query.add(mains, Occur.MUST);
+        return query;
+    }
+
+
+    /**
+     * Returns the queries for the given text in each product field.
+     * Fields in which the text does not produce any token are left out.
+     * @param text
+     * @return
+     * @throws IOException
+     */
+    public List<Query> fieldQueries(String text) throws IOException{
+        List<Query> result = fieldQueries.get(text);
+        if(result == null){
+            List<Token> tokens = analyze(text);
+            result = new ArrayList<Query>(FIELDS.length);
+            if(!tokens.isEmpty()){
+                for(String field : FIELDS){
+                    result.add(fieldQuery(field, tokens));
+                }
+            }
+            result = Collections.unmodifiableList(result);
+            fieldQueries.put(text, result);
+        }
+        return result;
+    }
+
+
+    /**
+     * Creates a restriction of the given field to the given values
+     * @param values    the values that are allowed for the field
+     * @param field     the field the restriction is applied to
+     * @return
+     * @throws IOException
+     */
+    public Query restriction(List<String> values, String field) throws IOException{
+        BooleanQuery query = new BooleanQuery();
+        List<Token>  tokens;
+        for(String value : values){
+            tokens = analyze(value);
+            if(!tokens.isEmpty()){
+                query.add(fieldQuery(field, tokens), Occur.SHOULD);
+            }
+        }
+        return query;
+    }
+
+
+    /**
+     * Adds the field queries of the text as optional clauses directly to the
+     * given query, like the QueryParser does for ungrouped clauses.
+     */
+    private void addOptional(BooleanQuery query, String text) throws IOException{
+        for(Query clause : fieldQueries(text)){
+            query.add(clause, Occur.SHOULD);
+        }
+    }
+
+
+    /**
+     * Creates the query for the analyzed tokens in the given field:
+     * a TermQuery for a single token, a BooleanQuery for several tokens at the
+     * same position and a PhraseQuery otherwise.
+     */
+    private Query fieldQuery(String field, List<Token> tokens){
+        if(tokens.size() == 1){
+            return new TermQuery(new Term(field, tokens.get(0).term));
+        }
+        if(tokens.get(tokens.size()-1).position == tokens.get(0).position){
+            BooleanQuery query = new BooleanQuery(true);
+            for(Token token : tokens){
+                query.add(new TermQuery(new Term(field, token.term)), Occur.SHOULD);
+            }
+            return query;
+        }
+        PhraseQuery query = new PhraseQuery();
+        for(Token token : tokens){
+            query.add(new Term(field, token.term), token.position);
+        }
+        return query;
+    }
+
+
+    /**
+     * Runs the analyzer on the given text. The analyzer is field independent,
+     * so the tokens are valid for all product fields.
+     */
+    private List<Token> analyze(String text) throws IOException{
+        List<Token>                 tokens      = new ArrayList<Token>();
+        TokenStream                 stream      = analyzer.tokenStream(Products.TEXT_FIELD, new StringReader(text));
+        CharTermAttribute           termAtt     = stream.addAttribute(CharTermAttribute.class);
+        PositionIncrementAttribute  posIncAtt   = stream.addAttribute(PositionIncrementAttribute.class);
+        int                         position    = -1;
+
+        try{
+            stream.reset();
+            while(stream.incrementToken()){
+                position += posIncAtt.getPositionIncrement();
+                tokens.add(new Token(termAtt.toString(), position));
+            }
+            stream.end();
+        }finally{
+            stream.close();
+        }
+        return tokens;
+    }
+
+
+    //analyzed token with its position in the text
+    private static class Token {
+        final String    term;
+        final int       position;
+
+        Token(String term, int position) {
+            this.term     = term;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package fbrec.matching;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Scorer.ChildScorer;
+import org.apache.lucene.search.Weight;
+
+/**
+ * Collector for a single query combining all tags of a profile, see
+ * {@link QueryBuilder#combinedQuery}.
+ * For each hit the collector checks which main queries matched and keeps the
+ * best documents for every matched tag separately, so the postings are only
+ * traversed once instead of once per tag.
+ *
+ * The score of a document for a tag is computed from the matched field clauses
+ * like the per tag query of {@link QueryBuilder#tagQuery} would score it: the
+ * main query of the tag and the field clauses of the other tags and of the
+ * wordPool of the tag, multiplied by the coordination factor over the clauses
+ * of the per tag query. The combined query is normalized over the wordPools of
+ * all tags, so the scores are scaled to the query norm of the per tag query.
+ * Scores are equal to the per tag search up to float rounding, given the
+ * default similarity.
+ * @author Daniel
+ */
+public class TagCollector extends Collector {
+    //orders hits by score, on equal scores the later document is worse like in lucene
+    private static final Comparator<ScoreDoc> WORST_FIRST = new Comparator<ScoreDoc>() {
+        @Override
+        public int compare(ScoreDoc a, ScoreDoc b) {
+            if(a.score != b.score) return a.score < b.score ? -1 : 1;
+            return b.doc - a.doc;
+        }
+    };
+
+    private final Map<Query, Integer>           mainTags;                       //main query => tag number
+    private final Map<Query, Integer>           poolTags;                       //pool query => tag number
+    private final int[]                         mainClauses;                    //number of field clauses of each main query
+    private final int[]                         poolClauses;                    //number of field clauses of each pool query
+    private final int                           fieldClauses;                   //number of field clauses of all main queries
+    private final float[]                       normFactors;                    //query norm of the per tag query / query norm of the combined query
+    private final List<PriorityQueue<ScoreDoc>> queues;                         //best hits per tag
+    private final int                           hitsPerTag;                     //maximal number of hits per tag
+
+    private final Scorer[]                      mainScorers;                    //scorer of each main query in the current segment, null if none
+    private final Scorer[][]                    mainFields;                     //field clause scorers of each main query in the current segment
+    private final Scorer[][]                    poolFields;                     //field clause scorers of each pool query in the current segment
+    private Scorer                              scorer;                         //scorer of the combined query
+    private int                                 docBase;                        //first document id of the current segment
+
+    private final float[]                       mainScores;                     //score of each matched main query for the current document
+    private final float[]                       fieldScores;                    //summed field clause scores of each main query for the current document
+    private final int[]                         fieldMatches;                   //matched field clauses of each main query for the current document
+    private final int[]                         matchedTags;                    //tags whose main query matched the current document
+
+    /**
+     * @param index         index the combined query is executed on, used for the query norms
+     * @param mainQueries   main query of each tag, in tag order
+     * @param poolQueries   pool query of each tag, in tag order, null if a tag has none
+     * @param hitsPerTag    number of documents collected for each tag
+     * @throws IOException
+     */
+    public TagCollector(Index index, Query[] mainQueries, Query[] poolQueries, int hitsPerTag) throws IOException {
+        int     numTags     = mainQueries.length;
+        float   sumBase     = 0;                                                //squared weights of all main queries
+        float   sumPools    = 0;                                                //squared weights of all pool queries
+        float[] sumPool     = new float[numTags];                               //squared weights of each pool query
+        int     fields      = 0;
+
+        this.mainTags       = new IdentityHashMap<Query, Integer>();
+        this.poolTags       = new IdentityHashMap<Query, Integer>();
+        this.mainClauses    = new int[numTags];
+        this.poolClauses    = new int[numTags];
+        this.normFactors    = new float[numTags];
+        this.queues         = new ArrayList<PriorityQueue<ScoreDoc>>(numTags);
+        this.hitsPerTag     = hitsPerTag;
+        this.mainScorers    = new Scorer[numTags];
+        this.mainFields     = new Scorer[numTags][];
+        this.poolFields     = new Scorer[numTags][];
+        this.mainScores     = new float[numTags];
+        this.fieldScores    = new float[numTags];
+        this.fieldMatches   = new int[numTags];
+        this.matchedTags    = new int[numTags];
+
+        for(int i = 0; i < numTags; i++){
+            mainTags.put(mainQueries[i], i);
+            mainClauses[i] = clauses(mainQueries[i]);
+            fields        += mainClauses[i];
+            sumBase       += index.sumOfSquaredWeights(mainQueries[i]);
+            if(poolQueries[i] != null){
+                poolTags.put(poolQueries[i], i);
+                poolClauses[i] = clauses(poolQueries[i]);
+                sumPool[i]     = index.sumOfSquaredWeights(poolQueries[i]);
+                sumPools      += sumPool[i];
+            }
+            queues.add(new PriorityQueue<ScoreDoc>(hitsPerTag+1, WORST_FIRST));
+        }
+        this.fieldClauses = fields;
+        for(int i = 0; i < numTags; i++){
+            normFactors[i] = queryNorm(sumBase + sumPool[i]) / queryNorm(sumBase + sumPools);
+        }
+    }
+
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+        this.scorer = scorer;
+        for(int i = 0; i < mainScorers.length; i++){
+            mainScorers[i] = null;
+            mainFields[i]  = new Scorer[0];
+            poolFields[i]  = new Scorer[0];
+        }
+        findScorers(scorer);
+    }
+
+
+    @Override
+    public void collect(int doc) throws IOException {
+        float   fieldSum    = 0;                                                //field clause scores of all matched main queries
+        int     fieldCount  = 0;                                                //matched field clauses of all main queries
+        int     numMatched  = 0;
+        int     tag;
+
+        scorer.score();                                                         //positions lazily advanced optional scorers on doc
+
+        for(tag = 0; tag < mainScorers.length; tag++){
+            if(mainScorers[tag] == null || mainScorers[tag].docID() != doc) continue;
+            mainScores[tag]   = mainScorers[tag].score();
+            fieldScores[tag]  = 0;
+            fieldMatches[tag] = 0;
+            for(Scorer field : mainFields[tag]){
+                if(field.docID() == doc){
+                    fieldScores[tag] += field.score();
+                    fieldMatches[tag]++;
+                }
+            }
+            fieldSum   += fieldScores[tag];
+            fieldCount += fieldMatches[tag];
+            matchedTags[numMatched++] = tag;
+        }
+        if(numMatched == 0) return;
+
+        for(int i = 0; i < numMatched; i++){
+            tag = matchedTags[i];
+            float   score   = mainScores[tag] + fieldSum - fieldScores[tag];
+            int     matched = 1 + fieldCount - fieldMatches[tag];               //main query and fields of the other tags
+            int     clauses = 1 + fieldClauses - mainClauses[tag] + poolClauses[tag];
+            for(Scorer field : poolFields[tag]){
+                if(field.docID() == doc){
+                    score += field.score();
+                    matched++;
+                }
+            }
+            score *= (float) matched / clauses * normFactors[tag];             //coordination factor of the per tag query
+            offer(queues.get(tag), new ScoreDoc(docBase + doc, score));
+        }
+    }
+
+
+    @Override
+    public void setNextReader(AtomicReaderContext context) throws IOException {
+        docBase = context.docBase;
+    }
+
+
+    /**
+     * Documents must be collected in order, otherwise the sub scorers are not
+     * positioned on the collected document.
+     */
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return false;
+    }
+
+
+    /**
+     * Returns the collected documents of the tag with the given number, best first
+     * @param tag   number of the tag, as given in the constructor
+     * @return
+     */
+    public List<ScoreDoc> topDocs(int tag){
+        List<ScoreDoc> result = new ArrayList<ScoreDoc>(queues.get(tag));
+        Collections.sort(result, Collections.reverseOrder(WORST_FIRST));
+        return result;
+    }
+
+
+    /**
+     * Collects the scorers of the main and pool queries and their field
+     * clauses from the scorer tree
+     */
+    private void findScorers(Scorer scorer){
+        Weight  weight  = scorer.getWeight();
+        Query   query   = weight == null ? null : weight.getQuery();
+        if(query != null && mainTags.containsKey(query)){
+            int tag = mainTags.get(query);
+            mainScorers[tag] = scorer;
+            mainFields[tag]  = children(scorer);
+        }else if(query != null && poolTags.containsKey(query)){
+            poolFields[poolTags.get(query)] = children(scorer);
+        }else{
+            for(ChildScorer child : scorer.getChildren()){
+                findScorers(child.child);
+            }
+        }
+    }
+
+
+    private static Scorer[] children(Scorer scorer){
+        Collection<ChildScorer> children = scorer.getChildren();
+        Scorer[]                result   = new Scorer[children.size()];
+        int                     i        = 0;
+        for(ChildScorer child : children){
+            result[i++] = child.child;
+        }
+        return result;
+    }
+
+
+    private static int clauses(Query query){
+        return query instanceof BooleanQuery ? ((BooleanQuery) query).clauses().size() : 1;
+    }
+
+
+    //query normalization of the default similarity, searches fall back to 1 for an empty query
+    private static float queryNorm(float sumOfSquaredWeights){
+        return sumOfSquaredWeights > 0 ? (float) (1.0 / Math.sqrt(sumOfSquaredWeights)) : 1.0f;
+    }
+
+
+    private void offer(PriorityQueue<ScoreDoc> queue, ScoreDoc hit){
+        if(queue.size() < hitsPerTag){
+            queue.add(hit);
+        }else if(!queue.isEmpty() && WORST_FIRST.compare(hit, queue.peek()) > 0){
+            queue.poll();
+            queue.add(hit);
+        }
+    }
+}
@@ -76,9 +76,7 @@ public class Recommendation implements JSONAware, Comparable{
     @Override
     public int hashCode() {
         int hash = 7;
-        hash = 97 * hash + this.productID;
-        hash = 97 * hash + (int) (Double.doubleToLongBits(this.score) ^ (Double.doubleToLongBits(this.score) >>> 32));
-        //hash = 97 * hash + (this.module != null ? this.module.hashCode() : 0);
+        hash = 97 * hash + this.productID;                                      //only the product, like equals - scores change while ranking
         return hash;
     }
     
@@ -20,6 +20,7 @@ import org.json.simple.JSONObject;
 public class Ranking extends ArrayList<Recommendation> implements JSONAware{
     private String      accessToken  = "";
     private Set<String> permissions  = null;
+    private boolean     degraded     = false;                                   //true if work was skipped because of the deadline
 
     public Ranking(List<Recommendation> recommendations) {
         super(recommendations);
@@ -33,12 +34,17 @@ public class Ranking extends ArrayList<Recommendation> implements JSONAware{
     public void setPermissions(Set<String> permissions) {
         this.permissions = permissions;
     }
+
+    public void setDegraded(boolean degraded) {
+        this.degraded = degraded;
+    }
     
      /**
      * Creates a JSON string from the ranking
      * @return the JSON string
      */
     @Override
+    @SuppressWarnings("unchecked")                                              //json-simple maps and lists are raw types
     public String toJSONString(){
         JSONObject  json = new JSONObject();
         JSONArray   jsonPermissions = new JSONArray();
@@ -50,6 +56,7 @@ public class Ranking extends ArrayList<Recommendation> implements JSONAware{
         json.put("accessToken", accessToken);
         json.put("permissions", jsonPermissions);
         json.put("recommendations", jsonRecommendations);
+        json.put("degraded", degraded);
         
         return json.toJSONString();
     }    
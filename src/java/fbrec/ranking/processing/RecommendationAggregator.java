@@ -0,0 +1,139 @@
+package fbrec.ranking.processing;
+
+import fbrec.control.Config;
+import fbrec.error.PostProcessingException;
+import fbrec.model.Recommendation;
+import fbrec.util.IntIntMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import org.apache.log4j.Logger;
+
+/**
+ * Combines duplicate removal, ranking and trimming of the recommendations.
+ * Hits can be added while they are found by the matcher, the scores of hits of
+ * the same product are added up - only one recommendation per product is kept.
+ * When processing, the best numResults products are selected with a bounded
+ * heap, ranked and padded with dummy recommendations like {@link RecListTrimmer}.
+ * The result equals {@link RecDuplicateFilter}, {@link ScoreRanker} and
+ * {@link RecListTrimmer} applied one after another.
+ * @author Daniel
+ */
+public class RecommendationAggregator implements IRecommendationProcessor{
+    private final int                   numResults;
+    private final IntIntMap             positions;                              //productID => position in products
+    private final List<Recommendation>  products;                               //one recommendation per product, in order of the first hit
+
+    public RecommendationAggregator(int numResults) {
+        this.numResults = numResults;
+        this.positions  = new IntIntMap(64);
+        this.products   = new ArrayList<Recommendation>();
+    }
+
+
+    /**
+     * Adds a hit of a product, the score is added to earlier hits of the product.
+     * The recommendation is only created for the first hit of a product.
+     * @param productID
+     * @param title
+     * @param score
+     * @param modules
+     * @param fields
+     */
+    public void add(int productID, String title, double score, Set<String> modules, Set<String> fields){
+        int position = positions.get(productID, -1);
+        if(position < 0){
+            positions.put(productID, products.size());
+            products.add(new Recommendation(productID, title, 0, score, modules, fields));
+        }else{
+            Recommendation rec = products.get(position);
+            rec.setScore(rec.getScore()+score);                                 //global scores are added
+        }
+    }
+
+
+    /**
+     * Adds a recommendation, the score is added to earlier hits of the product
+     * @param rec
+     */
+    public void add(Recommendation rec){
+        int position = positions.get(rec.getProductID(), -1);
+        if(position < 0){
+            positions.put(rec.getProductID(), products.size());
+            products.add(rec);
+        }else{
+            Logger.getLogger(Config.EVENT_LOGGER).debug("recommendation removed: "+rec);
+            Recommendation first = products.get(position);
+            first.setScore(first.getScore()+rec.getScore());                    //global scores are added
+        }
+    }
+
+
+    /**
+     * Returns the number of different products added so far
+     * @return
+     */
+    public int size(){
+        return products.size();
+    }
+
+
+    /**
+     * Adds the given recommendations to the hits added before and replaces
+     * them with the ranked best recommendations. The aggregator is empty afterwards.
+     * @param recommendations
+     * @throws PostProcessingException
+     */
+    @Override
+    public void process(ArrayList<Recommendation> recommendations) throws PostProcessingException {
+        Logger.getLogger(Config.EVENT_LOGGER).info("-- "+this.getClass().toString()+" called...");
+
+        for(Recommendation rec : recommendations){
+            add(rec);
+        }
+        Logger.getLogger(Config.EVENT_LOGGER).info(products.size()+" products aggregated");
+
+        recommendations.clear();
+        recommendations.addAll(top());
+        for(int i = 0; i < recommendations.size(); i++){
+            recommendations.get(i).setRank(i+1);
+        }
+        while(recommendations.size() < numResults){                             //if not enough recommendations are in list
+            recommendations.add(Recommendation.dummy());                        //ensure length with dummy recommendations
+        }
+        recommendations.trimToSize();
+
+        positions.clear();
+        products.clear();
+    }
+
+
+    /**
+     * Returns the best numResults products in descending order of their scores.
+     * Products with equal scores keep the order of their first hit, like in a stable sort.
+     */
+    private List<Recommendation> top(){
+        //heap of positions, the worst product is on top: lower score or later first hit for equal scores
+        Comparator<Integer> worstFirst = new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int result = products.get(a).compareTo(products.get(b));
+                return result != 0 ? result : b.compareTo(a);
+            }
+        };
+        PriorityQueue<Integer> heap = new PriorityQueue<Integer>(numResults + 1, worstFirst);
+        for(int i = 0; i < products.size(); i++){
+            heap.add(i);
+            if(heap.size() > numResults) heap.poll();                           //remove worst
+        }
+
+        Recommendation[] result = new Recommendation[heap.size()];
+        for(int i = result.length - 1; i >= 0; i--){                            //worst first => fill from the end
+            result[i] = products.get(heap.poll());
+        }
+        return Arrays.asList(result);
+    }
+}
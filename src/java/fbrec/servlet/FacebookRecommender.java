@@ -7,11 +7,23 @@ import fbrec.error.Error;
 import fbrec.error.PostProcessingException;
 import fbrec.error.MatchingException;
 import fbrec.error.TaggingException;
+import fbrec.control.Config;
+import fbrec.control.IRecommendationCallback;
 import fbrec.control.RecommendationProcess;
+import fbrec.control.RecommendationRequest;
+import fbrec.control.WorkerPools;
 import fbrec.error.ConfigException;
+import fbrec.matching.IndexManager;
 import fbrec.ranking.Ranking;
+import fbrec.util.SynonymService;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -19,13 +31,48 @@ import javax.servlet.http.HttpServletResponse;
 
 /**
  * The servlet class which is responsible for handling of request and responses
- * initiates the recommendation process
+ * initiates the recommendation process.
+ * The servlet holds no request data, all parameters are passed on in a
+ * RecommendationRequest, so requests may be processed concurrently.
+ * If the container supports it, requests are processed asynchronously.
  * @author Daniel
  */
 public class FacebookRecommender extends HttpServlet {
-    private String  accessToken;
-    private int     numResults;
-    private int     numTags;
+    private static final long   ASYNC_TIMEOUT_MARGIN = 5000;                    //ms the container waits beyond the budget, required stages may finish late
+    
+    /**
+     * Initializes the servlet.
+     * Loads the configuration and the shared resources, so that the first
+     * request does not have to pay for loading them. Starts watching the 
+     * configuration file for changes.
+     * @throws ServletException if the configuration or GermaNet could not be loaded
+     */
+    @Override
+    public void init() throws ServletException{
+        try{
+            Config.loadConfig();
+            Config.startWatching();
+            SynonymService.getInstance();
+            IndexManager.getInstance();
+        }catch(Exception e){
+            throw new ServletException(e);
+        }
+    }
+    
+    
+    /**
+     * Releases the resources of the servlet.
+     */
+    @Override
+    public void destroy(){
+        Config.stopWatching();
+        WorkerPools.shutdown();
+        try{
+            IndexManager.shutdown();
+        }catch(IOException e){
+            log("Closing the index failed.", e);
+        }
+    }
     
     
     /**
@@ -42,20 +89,25 @@ public class FacebookRecommender extends HttpServlet {
             throws ServletException, IOException{
         
         //init vars
+        RecommendationRequest recRequest;
         RecommendationProcess process;
         Ranking result;
         PrintWriter out;
  
         //set content type
         response.setContentType("application/json;charset=UTF-8");
+        if(request.isAsyncSupported()){
+            processAsync(request);
+            return;
+        }
         out = response.getWriter();
         try{
             //get submitted parameters
-            retrieveParameters(request);            
+            recRequest = retrieveParameters(request);            
             
             //start process
-            process = new RecommendationProcess(accessToken);
-            result  = process.init(numResults, numTags).getRecommendations();
+            process = new RecommendationProcess(recRequest);
+            result  = process.init().getRecommendations();
 
             //print result as json
             out.println(result.toJSONString());
@@ -80,35 +132,105 @@ public class FacebookRecommender extends HttpServlet {
         
     }
     
-    private void retrieveParameters(HttpServletRequest request){
-        //accesstoken
-        accessToken = request.getParameter("accessToken");                      
+    /**
+     * Processes the request asynchronously, the container thread is released
+     * while the recommendations are computed on the shared pools.
+     * @param request servlet request
+     */
+    private void processAsync(HttpServletRequest request){
+        final RecommendationRequest recRequest  = retrieveParameters(request);
+        final AsyncContext          async       = request.startAsync();
+        final AtomicBoolean         done        = new AtomicBoolean(false);     //the response is written only once
         
-        //number of results
-        if(request.getParameter("numResults") != null){                         
-            try{
-                int integer = Integer.parseInt(request.getParameter("numResults")); //check if submitted value is valid
-                numResults = integer;
-            }catch(NumberFormatException e){
-                numResults = 0;
-            }            
-        }
-        else{
-            numResults = 0;
-        }
+        async.setTimeout(recRequest.getTimeout() > 0                            //without budget the process always ends with a callback
+                            ? recRequest.getTimeout() + ASYNC_TIMEOUT_MARGIN : 0);
+        
+        async.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                finish(async, done, HttpServletResponse.SC_OK, Error.factory(new TimeoutException("Recommendation computation timed out.")).toJSONString());
+            }
+            @Override
+            public void onError(AsyncEvent event) throws IOException {
+                done.set(true);
+            }
+            @Override
+            public void onComplete(AsyncEvent event) throws IOException {
+            }
+            @Override
+            public void onStartAsync(AsyncEvent event) throws IOException {
+            }
+        });
         
-        //number of tags
-        if(request.getParameter("numTags") != null){                         
+        RecommendationProcess.recommendAsync(recRequest, new IRecommendationCallback() {
+            @Override
+            public void completed(Ranking ranking) {
+                finish(async, done, HttpServletResponse.SC_OK, ranking.toJSONString());
+            }
+            @Override
+            public void failed(Exception e) {
+                finish(async, done, e instanceof RejectedExecutionException     //pools are saturated or shut down
+                                        ? HttpServletResponse.SC_SERVICE_UNAVAILABLE : HttpServletResponse.SC_OK,
+                       Error.factory(e).toJSONString());
+            }
+        });
+    }
+    
+    
+    /**
+     * Writes the json result with the given status and completes the
+     * asynchronous request, if nothing was written before.
+     */
+    private void finish(AsyncContext async, AtomicBoolean done, int status, String json){
+        if(!done.compareAndSet(false, true)) return;
+        try{
+            ((HttpServletResponse) async.getResponse()).setStatus(status);
+            PrintWriter out = async.getResponse().getWriter();
+            out.println(json);
+            out.close();
+        }catch(IOException e){
+            log("Writing the response failed.", e);
+        }finally{
+            async.complete();
+        }
+    }
+    
+    
+    /**
+     * Reads the submitted parameters into a new request object.
+     * Invalid or missing numbers are set to 0, so that the defaults are used.
+     * @param request
+     * @return 
+     */
+    private RecommendationRequest retrieveParameters(HttpServletRequest request){
+        return new RecommendationRequest(request.getParameter("accessToken"),  //accesstoken
+                                         intParameter(request, "numResults"),  //number of results
+                                         intParameter(request, "numTags"),     //number of tags
+                                         timeoutParameter(request));           //time budget in ms
+    }
+    
+    /**
+     * Returns the time budget of the request in ms.
+     * Without a valid positive timeout parameter the configured request timeout
+     * is used. A client may only shorten the configured budget, not extend or
+     * disable it.
+     */
+    private long timeoutParameter(HttpServletRequest request){
+        long configured = Config.get().REQUEST_TIMEOUT;
+        int  timeout    = intParameter(request, "timeout");
+        if(timeout <= 0) return configured;                                     //missing, invalid or no limit requested
+        return configured > 0 ? Math.min(timeout, configured) : timeout;
+    }
+    
+    private int intParameter(HttpServletRequest request, String name){
+        if(request.getParameter(name) != null){                         
             try{
-                int integer = Integer.parseInt(request.getParameter("numTags")); //check if submitted value is valid
-                numTags = integer;
+                return Integer.parseInt(request.getParameter(name));            //check if submitted value is valid
             }catch(NumberFormatException e){
-                numTags = 0;
+                return 0;
             }            
         }
-        else{
-            numTags = 0;
-        }
+        return 0;
     }
     
     // <editor-fold defaultstate="collapsed" desc="HttpServlet methods. Click on the + sign on the left to edit the code.">
@@ -5,19 +5,22 @@
 package fbrec.tagging;
 
 import com.restfb.DefaultFacebookClient;
+import com.restfb.DefaultJsonMapper;
+import com.restfb.DefaultWebRequestor;
 import com.restfb.Facebook;
 import com.restfb.FacebookClient;
 import com.restfb.exception.FacebookGraphException;
 import com.restfb.exception.FacebookNetworkException;
 import com.restfb.exception.FacebookOAuthException;
 import com.restfb.json.JsonObject;
+import fbrec.control.Config;
+import fbrec.control.Deadline;
+import java.net.HttpURLConnection;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 /**
@@ -26,53 +29,65 @@ import java.util.Set;
  */
 public class FbConnector{
     FacebookClient client;
+    IProfileSource source;
+    Deadline       deadline;
+    String         accessToken;
 
     public FbConnector(String accessToken) {
-        client = new DefaultFacebookClient(accessToken);
+        this(accessToken, new Deadline(0));
+    }
+    
+    /**
+     * Creates a connector whose requests time out when the deadline is reached.
+     * Profiles are loaded from the source set in the configuration.
+     * @param accessToken
+     * @param deadline 
+     */
+    public FbConnector(String accessToken, Deadline deadline) {
+        this(accessToken, deadline, null);
+    }
+    
+    /**
+     * Creates a connector loading profiles from the given source
+     * @param accessToken
+     * @param deadline
+     * @param source        source of the profiles, null to use the configured source
+     */
+    public FbConnector(String accessToken, final Deadline deadline, IProfileSource source) {
+        this.deadline    = deadline;
+        this.accessToken = accessToken;
+        this.source      = source;
+        this.client      = new DefaultFacebookClient(accessToken, new DefaultWebRequestor(){
+            @Override
+            protected void customizeConnection(HttpURLConnection connection) {
+                GraphProfileSource.setTimeouts(connection, deadline);
+            }
+        }, new DefaultJsonMapper());
     }
 
+    /**
+     * Returns the profile of the user the access token belongs to.
+     * Profiles are taken from the ProfileCache if possible, loaded profiles are cached.
+     * @return 
+     */
     public FbProfile getProfile() throws FacebookOAuthException, FacebookNetworkException, FacebookGraphException {
-        List<String> permissions = tokenPermissions();
-        
-        Map<String, String> queries = new HashMap<String, String>();
-        queries.put("user",     "SELECT name, sex, birthday_date "
-                                + "FROM user "
-                                + "WHERE uid = me()");
-        
-        queries.put("likes",    "SELECT name, type "
-                                + "FROM page WHERE page_id "
-                                + "IN ("
-                                    + "SELECT page_id "
-                                    + "FROM page_fan "
-                                    + "WHERE uid=me()"
-                                + ")");
-        
-        queries.put("friends", "SELECT uid, first_name, last_name "
-                                + "FROM user "
-                                + "WHERE uid "
-                                + "IN ("
-                                    + "SELECT uid2 "
-                                    + "FROM friend "
-                                    + "WHERE uid1=me()"
-                                + ")");
-        
-        if(permissions.contains("read_stream")){
-            queries.put("statuses", "SELECT message "
-                                    + "FROM status "
-                                    + "WHERE uid=me()");
-        }
-        
-        if(permissions.contains("read_mailbox")){
-            queries.put("outbox",   "SELECT body "
-                                    + "FROM message "
-                                    + "WHERE thread_id "
-                                    + "IN ("
-                                        + "SELECT thread_id "
-                                        + "FROM thread "
-                                        + "WHERE folder_id=1"
-                                    + ")");
+        ProfileCache cache   = ProfileCache.getInstance();
+        FbProfile    profile = cache.get(accessToken);
+        if(profile == null){
+            profile = loadProfile();
+            if(!deadline.isDegraded()) cache.put(accessToken, profile);        //incomplete profiles are not cached
         }
-        return  client.executeMultiquery(queries, FbProfile.class);
+        return profile;
+    }
+    
+    /**
+     * Loads the profile from the profile source, posts are skipped when the deadline is exceeded
+     * @return 
+     */
+    protected FbProfile loadProfile() throws FacebookOAuthException, FacebookNetworkException, FacebookGraphException {
+        boolean loadPosts = !deadline.skip("loading statuses and outbox");     //posts are only needed for the text module
+        if(source == null) source = ProfileSources.fromConfig(Config.get());
+        return source.loadProfile(accessToken, loadPosts, deadline);
     }
     
     /**
@@ -80,8 +95,15 @@ public class FbConnector{
      * @return 
      */
     public List<String> tokenPermissions(){
+        return permissions(client.fetchObject("me/permissions", JsonObject.class));
+    }
+    
+    /**
+     * Reads the granted permissions from a me/permissions response
+     */
+    private static List<String> permissions(JsonObject response){
         List<String> permissions;
-        JsonObject  result  = client.fetchObject("me/permissions", JsonObject.class).getJsonArray("data").getJsonObject(0);
+        JsonObject  result  = response.getJsonArray("data").getJsonObject(0);
         Iterator    keys    = result.sortedKeys();
         permissions = new ArrayList();
         while(keys.hasNext()){
@@ -111,6 +133,25 @@ public class FbConnector{
         @Facebook
         private List<FbMessage> outbox;
 
+        public FbProfile() {
+        }
+
+        FbProfile(List<FbUser> user, List<FbLike> likes, List<FbFriend> friends, List<FbStatus> statuses, List<FbMessage> outbox) {
+            this.user     = user;
+            this.likes    = likes;
+            this.friends  = friends;
+            this.statuses = statuses;
+            this.outbox   = outbox;
+        }
+
+        /**
+         * Returns a copy of the profile without statuses and outbox
+         * @return 
+         */
+        FbProfile withoutPosts(){
+            return new FbProfile(user, likes, friends, null, null);
+        }
+
         public FbUser user() {
             return user.get(0);
         }
@@ -138,9 +179,30 @@ public class FbConnector{
         public List<FbFriend> friends(){
             return friends;
         }
+        
+        /**
+         * Returns a rough estimation of the memory used by the profile in bytes
+         * @return 
+         */
+        public long estimatedSize(){
+            long size = 64;
+            if(user != null)      for(FbUser u : user)        size += 32 + size(u.uid) + size(u.name) + size(u.sex) + size(u.birthday);
+            if(likes != null)     for(FbLike l : likes)       size += 32 + size(l.name) + size(l.type);
+            if(friends != null)   for(FbFriend f : friends)   size += 32 + size(f.uid) + size(f.firstName) + size(f.lastName);
+            if(statuses != null)  for(FbStatus s : statuses)  size += 32 + size(s.message);
+            if(outbox != null)    for(FbMessage m : outbox)   size += 32 + size(m.message);
+            return size;
+        }
+        
+        private static long size(String str){
+            return str == null ? 0 : 40 + 2 * str.length();
+        }
     }
     
     public static class FbUser{
+        @Facebook
+        public String uid;
+        
         @Facebook
         public String name;
         
@@ -0,0 +1,111 @@
+package fbrec.tagging;
+
+import com.restfb.DefaultJsonMapper;
+import com.restfb.JsonMapper;
+import com.restfb.exception.FacebookGraphException;
+import com.restfb.exception.FacebookNetworkException;
+import com.restfb.exception.FacebookOAuthException;
+import fbrec.control.Deadline;
+import fbrec.tagging.FbConnector.FbProfile;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Serves recorded profiles from json files, used for load tests without facebook.
+ * A fixture holds the results of the profile queries by query name, like the
+ * fql multiquery returns them:
+ * {"user":[{"uid":..,"name":..,"sex":..,"birthday_date":..}], "likes":[{"name":..,"type":..}],
+ *  "friends":[{"uid":..,"first_name":..,"last_name":..}], "statuses":[{"message":..}], "outbox":[{"body":..}]}
+ * Missing statuses or outbox are treated like missing permissions.
+ * The fixture for a token is the file named &lt;token&gt;.json, any other token is
+ * mapped to one of the fixtures by its hash, so a few fixtures can be replayed
+ * with arbitrary many tokens.
+ * @author Daniel
+ */
+public class FixtureProfileSource implements IProfileSource {
+    private final File          directory;                                      //directory of the fixtures
+    private final File[]        fixtures;                                       //all fixtures, sorted by name
+    private final Map<String, File> byName;                                     //file name => fixture, tokens are only looked up here
+    private final JsonMapper    jsonMapper;
+
+    /**
+     * @param directory     directory containing the fixtures as .json files
+     * @throws IllegalArgumentException if the directory contains no fixtures
+     */
+    public FixtureProfileSource(File directory) {
+        this.directory  = directory;
+        this.fixtures   = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(".json");
+            }
+        });
+        this.jsonMapper = new DefaultJsonMapper();
+        if(fixtures == null || fixtures.length == 0){
+            throw new IllegalArgumentException("no profile fixtures in "+directory);
+        }
+        Arrays.sort(fixtures);
+        this.byName     = new HashMap<String, File>(fixtures.length * 2);
+        for(File fixture : fixtures){
+            byName.put(fixture.getName(), fixture);
+        }
+    }
+
+
+    @Override
+    public FbProfile loadProfile(String accessToken, boolean loadPosts, Deadline deadline) throws FacebookOAuthException, FacebookNetworkException, FacebookGraphException {
+        try{
+            FbProfile profile = jsonMapper.toJavaObject(read(fixture(accessToken)), FbProfile.class);
+            return loadPosts ? profile : profile.withoutPosts();
+        }catch(IOException e){
+            throw new FacebookNetworkException("Profile fixture could not be read", e);
+        }
+    }
+
+
+    /**
+     * Returns the fixture file for the given token.
+     * The token is only compared with the names of the listed fixtures and never
+     * used as a path, so tokens like ../x can not read files outside the directory.
+     * @param accessToken
+     * @return
+     */
+    public File fixture(String accessToken){
+        File file = byName.get(accessToken+".json");
+        if(file != null) return file;
+        return fixtures[(String.valueOf(accessToken).hashCode() & Integer.MAX_VALUE) % fixtures.length];
+    }
+
+
+    public File getDirectory() {
+        return directory;
+    }
+
+
+    /**
+     * Reads the content of the given fixture
+     * @param fixture
+     * @return
+     * @throws IOException
+     */
+    public static String read(File fixture) throws IOException{
+        Reader in = new InputStreamReader(new FileInputStream(fixture), "UTF-8");
+        try{
+            StringBuilder result = new StringBuilder();
+            char[]        buffer = new char[8192];
+            for(int read = in.read(buffer); read != -1; read = in.read(buffer)){
+                result.append(buffer, 0, read);
+            }
+            return result.toString();
+        }finally{
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package fbrec.tagging;
+
+import com.restfb.DefaultJsonMapper;
+import com.restfb.JsonMapper;
+import com.restfb.Parameter;
+import com.restfb.batch.BatchRequest;
+import com.restfb.batch.BatchRequest.BatchRequestBuilder;
+import com.restfb.exception.FacebookGraphException;
+import com.restfb.exception.FacebookNetworkException;
+import com.restfb.exception.FacebookOAuthException;
+import com.restfb.json.JsonObject;
+import fbrec.control.Deadline;
+import fbrec.tagging.FbConnector.FbProfile;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads profiles from the facebook Graph API.
+ * The permissions of the token and all queries are sent in one batch request,
+ * so loading a profile needs a single round trip. Statuses and outbox are
+ * queried separately within the batch and only used if the token grants the
+ * needed permission, a missing permission does not fail the other queries.
+ * The response is parsed by the ProfileReader while it is received.
+ * The url of the API can be changed to use a local stand-in for load tests.
+ * @author Daniel
+ */
+public class GraphProfileSource implements IProfileSource {
+    public static final String  FACEBOOK_GRAPH_URL = "https://graph.facebook.com/";
+    static final int            MIN_TIMEOUT        = 2000;                      //ms a required request gets at least, even if the budget is used up
+
+    private final String        graphUrl;                                       //base url of the graph api, ending with /
+    private final JsonMapper    jsonMapper;                                     //serializes the batch requests
+
+    public GraphProfileSource() {
+        this(FACEBOOK_GRAPH_URL);
+    }
+
+    /**
+     * @param graphUrl  base url of the graph api
+     */
+    public GraphProfileSource(String graphUrl) {
+        this.graphUrl   = graphUrl.endsWith("/") ? graphUrl : graphUrl + "/";
+        this.jsonMapper = new DefaultJsonMapper();
+    }
+
+    @Override
+    public FbProfile loadProfile(String accessToken, boolean loadPosts, Deadline deadline) throws FacebookOAuthException, FacebookNetworkException, FacebookGraphException {
+        Map<String, String> queries = new HashMap<String, String>();
+        queries.put("user",     "SELECT uid, name, sex, birthday_date "
+                                + "FROM user "
+                                + "WHERE uid = me()");
+        
+        queries.put("likes",    "SELECT name, type "
+                                + "FROM page WHERE page_id "
+                                + "IN ("
+                                    + "SELECT page_id "
+                                    + "FROM page_fan "
+                                    + "WHERE uid=me()"
+                                + ")");
+        
+        queries.put("friends", "SELECT uid, first_name, last_name "
+                                + "FROM user "
+                                + "WHERE uid "
+                                + "IN ("
+                                    + "SELECT uid2 "
+                                    + "FROM friend "
+                                    + "WHERE uid1=me()"
+                                + ")");
+        
+        List<BatchRequest> batch = new ArrayList<BatchRequest>();
+        batch.add(new BatchRequestBuilder("me/permissions").build());
+        batch.add(fqlRequest(queries));
+        
+        if(loadPosts){
+            batch.add(fqlRequest(Collections.singletonMap("statuses", 
+                                      "SELECT message "
+                                    + "FROM status "
+                                    + "WHERE uid=me()")));
+            
+            batch.add(fqlRequest(Collections.singletonMap("outbox", 
+                                      "SELECT body "
+                                    + "FROM message "
+                                    + "WHERE thread_id "
+                                    + "IN ("
+                                        + "SELECT thread_id "
+                                        + "FROM thread "
+                                        + "WHERE folder_id=1"
+                                    + ")")));
+        }
+        
+        return executeBatch(accessToken, batch, deadline);
+    }
+    
+    /**
+     * Sends the batch to facebook and reads the profile from the response while it is received
+     */
+    private FbProfile executeBatch(String accessToken, List<BatchRequest> batch, Deadline deadline) throws FacebookOAuthException, FacebookNetworkException, FacebookGraphException {
+        HttpURLConnection connection = null;
+        try{
+            String parameters = "access_token=" + URLEncoder.encode(accessToken, "UTF-8")
+                              + "&batch="       + URLEncoder.encode(jsonMapper.toJson(batch, true), "UTF-8")
+                              + "&format=json";
+            
+            connection = (HttpURLConnection) new URL(graphUrl).openConnection();
+            setTimeouts(connection, deadline);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            OutputStream out = connection.getOutputStream();
+            out.write(parameters.getBytes("UTF-8"));
+            out.close();
+            
+            int    status = connection.getResponseCode();
+            Reader in     = new InputStreamReader(status < 400 ? connection.getInputStream() : connection.getErrorStream(), "UTF-8");
+            try{
+                if(status != HttpURLConnection.HTTP_OK) throw ProfileReader.error(status, readAll(in));
+                return new ProfileReader().read(in);
+            }finally{
+                in.close();
+            }
+        }catch(IOException e){
+            throw new FacebookNetworkException("Facebook request failed", e);
+        }finally{
+            if(connection != null) connection.disconnect();
+        }
+    }
+    
+    /**
+     * Limits the time of a request to the remaining time of the deadline, but
+     * not below MIN_TIMEOUT. The requests are required for a result, if the
+     * budget is used up only the optional posts are skipped (see FbConnector),
+     * so a late request returns a degraded result instead of failing.
+     * @param connection
+     * @param deadline 
+     */
+    static void setTimeouts(HttpURLConnection connection, Deadline deadline){
+        if(deadline.limited()){
+            int timeout = (int) Math.min(Math.max(deadline.remaining(), MIN_TIMEOUT), Integer.MAX_VALUE);
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+        }
+    }
+    
+    private static String readAll(Reader in) throws IOException{
+        StringBuilder result = new StringBuilder();
+        char[]        buffer = new char[4096];
+        for(int read = in.read(buffer); read != -1; read = in.read(buffer)){
+            result.append(buffer, 0, read);
+        }
+        return result.toString();
+    }
+    
+    /**
+     * Creates a batch request for the given fql queries
+     */
+    private static BatchRequest fqlRequest(Map<String, String> queries){
+        JsonObject json = new JsonObject();
+        for(Map.Entry<String, String> query : queries.entrySet()){
+            json.put(query.getKey(), query.getValue());
+        }
+        return new BatchRequestBuilder("fql").parameters(Parameter.with("q", json.toString())).build();
+    }
+}
@@ -0,0 +1,22 @@
+package fbrec.tagging;
+
+import com.restfb.exception.FacebookGraphException;
+import com.restfb.exception.FacebookNetworkException;
+import com.restfb.exception.FacebookOAuthException;
+import fbrec.control.Deadline;
+import fbrec.tagging.FbConnector.FbProfile;
+
+/**
+ * Interface for all sources the FbConnector loads profiles from
+ * @author Daniel
+ */
+public interface IProfileSource {
+    /**
+     * Loads the profile of the user the access token belongs to
+     * @param accessToken
+     * @param loadPosts     false if statuses and outbox should not be loaded
+     * @param deadline      deadline of the request, loading should not take longer
+     * @return
+     */
+    public FbProfile loadProfile(String accessToken, boolean loadPosts, Deadline deadline) throws FacebookOAuthException, FacebookNetworkException, FacebookGraphException;
+}
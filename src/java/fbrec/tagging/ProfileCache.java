@@ -0,0 +1,191 @@
+package fbrec.tagging;
+
+import fbrec.control.Config;
+import fbrec.tagging.FbConnector.FbProfile;
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+/**
+ * Cache of Facebook profiles shared by all requests.
+ * Profiles are stored by the id of the Facebook user, an access token only
+ * maps to the user it was issued for, so a profile is never served for a
+ * token that was not used to load it. Tokens are only kept as hash.
+ * Entries expire after the configured time, if the estimated size of all
+ * profiles exceeds the configured limit the least recently used ones are evicted.
+ * @author Daniel
+ */
+public class ProfileCache {
+    private static final int        MAX_TOKENS  = 100000;                       //maximal number of remembered tokens
+    private static volatile ProfileCache instance;                              //shared instance, created on first use
+
+    private final long                          maxSize;                        //maximal estimated size of all profiles in bytes
+    private final long                          ttl;                            //time in ms an entry is valid
+    private final LinkedHashMap<String, Entry>  profiles;                       //user id => profile, in access order
+    private final LinkedHashMap<String, Entry>  tokens;                         //token hash => user id
+    private long                                size;                           //estimated size of all profiles
+
+    private final AtomicLong                    hits;
+    private final AtomicLong                    misses;
+    private final AtomicLong                    evictions;
+
+    private ProfileCache(long maxSize, long ttl) {
+        this.maxSize    = maxSize;
+        this.ttl        = ttl;
+        this.profiles   = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+        this.tokens     = new LinkedHashMap<String, Entry>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > MAX_TOKENS;
+            }
+        };
+        this.size       = 0;
+        this.hits       = new AtomicLong(0);
+        this.misses     = new AtomicLong(0);
+        this.evictions  = new AtomicLong(0);
+    }
+
+
+    /**
+     * Returns the shared cache with the configured size and time to live
+     * @return
+     */
+    public static ProfileCache getInstance(){
+        ProfileCache result = instance;
+        if(result == null){
+            synchronized(ProfileCache.class){
+                result = instance;
+                if(result == null){
+                    result   = new ProfileCache(Config.get().PROFILE_CACHE_SIZE * 1024L * 1024L,
+                                                Config.get().PROFILE_CACHE_TTL * 1000L);
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Returns the cached profile of the user the token belongs to
+     * @param accessToken
+     * @return the profile or null if it is not cached
+     */
+    public FbProfile get(String accessToken){
+        if(maxSize <= 0) return null;
+
+        FbProfile profile = null;
+        synchronized(this){
+            Entry token = valid(tokens, hash(accessToken));
+            if(token != null){
+                Entry entry = valid(profiles, (String) token.value);
+                if(entry != null) profile = (FbProfile) entry.value;
+            }
+        }
+
+        if(profile != null) hits.incrementAndGet();
+        else                misses.incrementAndGet();
+        Logger.getLogger(Config.EVENT_LOGGER).debug("profile cache "+(profile != null ? "hit" : "miss")+" - "+this);
+        return profile;
+    }
+
+
+    /**
+     * Caches the profile loaded with the given token
+     * @param accessToken
+     * @param profile
+     */
+    public void put(String accessToken, FbProfile profile){
+        String  userID      = profile.user().uid;
+        long    profileSize = profile.estimatedSize();
+        long    expires     = System.currentTimeMillis() + ttl;
+        if(maxSize <= 0 || userID == null || profileSize > maxSize) return;
+
+        synchronized(this){
+            tokens.put(hash(accessToken), new Entry(userID, 0, expires));
+            Entry old = profiles.put(userID, new Entry(profile, profileSize, expires));
+            if(old != null) size -= old.size;
+            size += profileSize;
+
+            //evict least recently used profiles
+            Iterator<Entry> it = profiles.values().iterator();
+            while(size > maxSize && it.hasNext()){
+                Entry eldest = it.next();
+                it.remove();
+                size -= eldest.size;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "profiles: "+profiles.size()+", size: "+(size/1024)+"KB, hits: "+hits.get()+", misses: "+misses.get()+", evictions: "+evictions.get();
+    }
+
+
+    /**
+     * Returns the entry for the key if it is not expired, expired entries are removed
+     */
+    private Entry valid(Map<String, Entry> map, String key){
+        Entry entry = map.get(key);
+        if(entry != null && entry.expires < System.currentTimeMillis()){
+            map.remove(key);
+            if(map == profiles) size -= entry.size;
+            return null;
+        }
+        return entry;
+    }
+
+
+    /**
+     * Hashes the token, so no usable tokens are kept in memory
+     */
+    private static String hash(String accessToken){
+        try{
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return new BigInteger(1, digest.digest(String.valueOf(accessToken).getBytes("UTF-8"))).toString(16);
+        }catch(NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        }catch(UnsupportedEncodingException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    //cache entry
+    private static class Entry {
+        final Object    value;                                                  //profile or user id
+        final long      size;                                                   //estimated size in bytes
+        final long      expires;                                                //time in ms the entry expires
+
+        Entry(Object value, long size, long expires) {
+            this.value   = value;
+            this.size    = size;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package fbrec.tagging;
+
+import com.restfb.exception.FacebookException;
+import com.restfb.exception.FacebookGraphException;
+import com.restfb.exception.FacebookOAuthException;
+import com.restfb.json.JsonException;
+import com.restfb.json.JsonObject;
+import fbrec.control.Config;
+import fbrec.tagging.FbConnector.FbFriend;
+import fbrec.tagging.FbConnector.FbLike;
+import fbrec.tagging.FbConnector.FbMessage;
+import fbrec.tagging.FbConnector.FbProfile;
+import fbrec.tagging.FbConnector.FbStatus;
+import fbrec.tagging.FbConnector.FbUser;
+import fbrec.util.JsonStreamReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.log4j.Logger;
+
+/**
+ * Reads the response of the profile batch request while it is received.
+ * The response is parsed as stream, the fql results embedded as string in the
+ * batch response are decoded on the fly, rows are mapped to the profile
+ * classes directly. Neither the whole response nor a JSON tree is kept in
+ * memory. Posts are only read if the token grants the permission for them,
+ * otherwise they are skipped without being stored.
+ * The batch has to contain me/permissions as first request followed by the
+ * fql multiquery of the user data and the fql requests of the posts. Failed
+ * post requests are skipped, the posts are missing then.
+ * @author Daniel
+ */
+public class ProfileReader {
+    private static final int        REQUIRED_REQUESTS = 2;                      //permissions and user data, the others are posts
+    private final Set<String>       permissions;                                //permissions granted with the token
+    private List<FbUser>            user;
+    private List<FbLike>            likes;
+    private List<FbFriend>          friends;
+    private List<FbStatus>          statuses;                                   //null if not permitted
+    private List<FbMessage>         outbox;                                     //null if not permitted
+
+    public ProfileReader() {
+        this.permissions = new HashSet<String>();
+    }
+
+
+    /**
+     * Reads the profile from a batch response
+     * @param response
+     * @return
+     * @throws IOException if the response can not be read or is malformed
+     * @throws FacebookOAuthException if facebook reported an OAuth error for one of the requests
+     * @throws FacebookGraphException if facebook reported another error for one of the requests
+     */
+    public FbProfile read(Reader response) throws IOException, FacebookOAuthException, FacebookGraphException{
+        JsonStreamReader json = new JsonStreamReader(response);
+        json.beginArray();
+        for(int request = 0; json.hasNext(); request++){
+            readResponse(json, request);
+        }
+        json.endArray();
+        return new FbProfile(user, likes, friends, statuses, outbox);
+    }
+
+
+    /**
+     * Returns the permissions granted with the token, available after reading
+     * @return
+     */
+    public Set<String> getPermissions() {
+        return permissions;
+    }
+
+
+    /**
+     * Creates the exception for an error response of facebook
+     * @param status    http status of the response
+     * @param body      body of the response
+     * @return
+     */
+    public static FacebookException error(Integer status, String body){
+        JsonObject error = null;
+        try{
+            error = new JsonObject(body).optJsonObject("error");
+        }catch(JsonException e){
+            //no json error message, the body is used as message
+        }
+        String type    = error != null ? error.optString("type")    : "BatchException";
+        String message = error != null ? error.optString("message") : body;
+        if("OAuthException".equals(type)){
+            return new FacebookOAuthException(type, message, error.has("code") ? error.optInt("code") : null, status);
+        }
+        return new FacebookGraphException(type, message, status);
+    }
+
+
+    /**
+     * Reads the response of a single request of the batch
+     */
+    private void readResponse(JsonStreamReader json, int request) throws IOException{
+        if(json.isNull()){
+            json.skipValue();
+            if(request < REQUIRED_REQUESTS) throw new FacebookGraphException("BatchException", "no response for batch request "+request, null);
+            return;
+        }
+
+        Integer code         = null;
+        String  bufferedBody = null;
+        json.beginObject();
+        while(json.hasNext()){
+            String name = json.nextName();
+            if(name.equals("code")){
+                code = json.nextInt();
+            }else if(name.equals("body") && code != null && code == 200){
+                Reader body = json.nextStringReader();                          //stream successful bodies
+                readBody(new JsonStreamReader(body), request);
+                body.close();
+            }else if(name.equals("body")){
+                bufferedBody = json.nextString();                               //status unknown yet or error
+            }else{
+                json.skipValue();
+            }
+        }
+        json.endObject();
+
+        if(code == null || code != 200){
+            FacebookException error = error(code, bufferedBody);
+            if(request < REQUIRED_REQUESTS) throw error;
+            Logger.getLogger(Config.EVENT_LOGGER).warn("posts could not be retrieved: "+error.getMessage());
+            return;
+        }
+        if(bufferedBody != null)        readBody(new JsonStreamReader(new StringReader(bufferedBody)), request);
+    }
+
+
+    private void readBody(JsonStreamReader body, int request) throws IOException{
+        body.beginObject();
+        while(body.hasNext()){
+            if(body.nextName().equals("data")){
+                if(request == 0) readPermissions(body);
+                else             readResultSets(body);
+            }else{
+                body.skipValue();
+            }
+        }
+        body.endObject();
+    }
+
+
+    private void readPermissions(JsonStreamReader json) throws IOException{
+        json.beginArray();
+        if(json.hasNext()){
+            json.beginObject();
+            while(json.hasNext()){
+                permissions.add(json.nextName());
+                json.skipValue();
+            }
+            json.endObject();
+        }
+        while(json.hasNext()) json.skipValue();
+        json.endArray();
+    }
+
+
+    /**
+     * Reads the results of a fql multiquery
+     */
+    private void readResultSets(JsonStreamReader json) throws IOException{
+        json.beginArray();
+        while(json.hasNext()){
+            String name = null;
+            json.beginObject();
+            while(json.hasNext()){
+                String property = json.nextName();
+                if(property.equals("name")){
+                    name = json.nextString();
+                }else if(property.equals("fql_result_set") && name != null){
+                    readResultSet(json, name);
+                }else{
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+        }
+        json.endArray();
+    }
+
+
+    private void readResultSet(JsonStreamReader json, String name) throws IOException{
+        if(name.equals("user"))                                                  user     = new ArrayList<FbUser>();
+        else if(name.equals("likes"))                                            likes    = new ArrayList<FbLike>();
+        else if(name.equals("friends"))                                          friends  = new ArrayList<FbFriend>();
+        else if(name.equals("statuses") && permissions.contains("read_stream"))  statuses = new ArrayList<FbStatus>();
+        else if(name.equals("outbox")   && permissions.contains("read_mailbox")) outbox   = new ArrayList<FbMessage>();
+        else{
+            json.skipValue();                                                   //unknown or not permitted
+            return;
+        }
+
+        //facebook returns an empty object instead of an empty list for empty results
+        if(!json.isArray()){
+            json.skipValue();
+            return;
+        }
+
+        json.beginArray();
+        while(json.hasNext()){
+            if(name.equals("user")){
+                String[] row = readRow(json, "uid", "name", "sex", "birthday_date");
+                FbUser   u   = new FbUser();
+                u.uid       = row[0];
+                u.name      = row[1];
+                u.sex       = row[2];
+                u.birthday  = row[3];
+                user.add(u);
+            }else if(name.equals("likes")){
+                String[] row = readRow(json, "name", "type");
+                FbLike   l   = new FbLike();
+                l.name      = row[0];
+                l.type      = row[1];
+                likes.add(l);
+            }else if(name.equals("friends")){
+                String[] row = readRow(json, "uid", "first_name", "last_name");
+                FbFriend f   = new FbFriend();
+                f.uid       = row[0];
+                f.firstName = row[1];
+                f.lastName  = row[2];
+                friends.add(f);
+            }else if(name.equals("statuses")){
+                String[] row = readRow(json, "message");
+                if(row[0] != null){
+                    FbStatus s  = new FbStatus();
+                    s.message   = row[0];
+                    statuses.add(s);
+                }
+            }else{
+                String[] row = readRow(json, "body");
+                if(row[0] != null){
+                    FbMessage m = new FbMessage();
+                    m.message   = row[0];
+                    outbox.add(m);
+                }
+            }
+        }
+        json.endArray();
+    }
+
+
+    /**
+     * Reads the given scalar fields of a row, all other fields are skipped
+     */
+    private String[] readRow(JsonStreamReader json, String... fields) throws IOException{
+        String[] row = new String[fields.length];
+        json.beginObject();
+        while(json.hasNext()){
+            String property = json.nextName();
+            int    index    = -1;
+            for(int i = 0; i < fields.length; i++){
+                if(fields[i].equals(property)) index = i;
+            }
+            if(index >= 0 && !json.isObject() && !json.isArray()) row[index] = json.nextString();
+            else                                                  json.skipValue();
+        }
+        json.endObject();
+        return row;
+    }
+}
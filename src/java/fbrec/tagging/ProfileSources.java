@@ -0,0 +1,37 @@
+package fbrec.tagging;
+
+import fbrec.control.Config;
+import fbrec.control.ConfigSnapshot;
+import java.io.File;
+
+/**
+ * Creates the profile source set in the configuration
+ * @author Daniel
+ */
+public final class ProfileSources {
+    private static FixtureProfileSource fixtures;                               //fixture source of the current configuration, the fixture list is kept
+
+    private ProfileSources() {
+    }
+
+
+    /**
+     * Returns the profile source set in the given configuration.
+     * PROFILE_SOURCE = graph loads profiles from GRAPH_URL, fixtures serves the
+     * recorded profiles of PROFILE_FIXTURE_DIR.
+     * @param config
+     * @return
+     */
+    public static synchronized IProfileSource fromConfig(ConfigSnapshot config){
+        if(!config.PROFILE_SOURCE.equals("fixtures")){
+            return new GraphProfileSource(config.GRAPH_URL);
+        }
+
+        File directory = new File(config.PROFILE_FIXTURE_DIR);
+        if(!directory.isAbsolute()) directory = Config.getFile(config.PROFILE_FIXTURE_DIR);
+        if(fixtures == null || !fixtures.getDirectory().equals(directory)){
+            fixtures = new FixtureProfileSource(directory);
+        }
+        return fixtures;
+    }
+}
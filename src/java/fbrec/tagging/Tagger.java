@@ -2,6 +2,7 @@ package fbrec.tagging;
 
 import fbrec.model.Tag;
 import fbrec.control.Config;
+import fbrec.control.Deadline;
 import fbrec.error.TaggingException;
 import fbrec.tagging.processing.ITagProcessor;
 import fbrec.error.PostProcessingException;
@@ -9,25 +10,64 @@ import fbrec.tagging.FbConnector.FbProfile;
 import fbrec.tagging.module.Module;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
 /**
  * Controls the tagging process.
+ * Modules are either called one after another or, if an executor is given,
+ * all at once. In the parallel case each module has to finish within the
+ * module timeout, otherwise its tags are left out. The tags are always added
+ * in the order the modules were added.
+ * Optional modules and processors are skipped once the deadline is exceeded,
+ * the other ones always run, so there are tags even if the budget is used up.
  * @author Daniel
  */
 public class Tagger{
     private ArrayList<Tag>              tags    = null;
     private ArrayList<ITagProcessor>    filters = null;
+    private ArrayList<ITagProcessor>    optional = null;                        //processors skipped when the deadline is exceeded
     private ArrayList<Module>           modules = null;
+    private ArrayList<Module>           optionalModules = null;                 //modules skipped when the deadline is exceeded
+    private ExecutorService             executor = null;                        //runs the modules in parallel, null for sequential execution
+    private long                        moduleTimeout = 0;                      //time in ms a module may take in parallel execution, 0 = no limit
+    private Deadline                    deadline = new Deadline(0);             //time budget of the process
 
     public Tagger(){
         super();
         filters = new ArrayList<ITagProcessor>();
+        optional= new ArrayList<ITagProcessor>();
         modules = new ArrayList<Module>();
+        optionalModules = new ArrayList<Module>();
         tags    = new ArrayList<Tag>();
     }
+    
+    /**
+     * Creates a tagger calling the modules in parallel
+     * @param executor          executor the modules are run on
+     * @param moduleTimeout     time in ms each module may take, 0 = no limit
+     */
+    public Tagger(ExecutorService executor, long moduleTimeout){
+        this();
+        this.executor       = executor;
+        this.moduleTimeout  = moduleTimeout;
+    }
 
+    /**
+     * Sets the time budget, it is passed on to all modules
+     * @param deadline 
+     */
+    public void setDeadline(Deadline deadline){
+        this.deadline = deadline;
+    }
+    
+    
     /**
      * adds given module to the execution list
      * @param module 
@@ -37,6 +77,18 @@ public class Tagger{
     }
     
     
+    /**
+     * adds given module to the execution list. Optional modules are skipped
+     * when the deadline is exceeded.
+     * @param module 
+     * @param optional 
+     */
+    public void addModule(Module module, boolean optional){
+        addModule(module);
+        if(optional) optionalModules.add(module);
+    }
+    
+    
     /**
      * generates tags for given profile
      * @param profile
@@ -44,7 +96,74 @@ public class Tagger{
      */
     public void tagProfile(FbProfile profile) throws TaggingException{
         for(Module module : modules){
-            tags.addAll(module.getTags(profile));
+            module.setDeadline(deadline);
+        }
+        if(executor == null){
+            for(Module module : modules){
+                if(optionalModules.contains(module) && deadline.skip(module.getClass().getSimpleName())) continue;
+                tags.addAll(module.getTags(profile));
+            }
+        }else{
+            tagProfileParallel(profile);
+        }
+    }
+    
+    
+    /**
+     * Runs all modules on the executor and collects their tags in module order.
+     * A module exceeding the timeout is cancelled and contributes no tags, an
+     * optional module also if it exceeds the deadline.
+     * Optional modules are not started if the deadline is already exceeded.
+     * @param profile
+     * @throws TaggingException 
+     */
+    private void tagProfileParallel(final FbProfile profile) throws TaggingException{
+        List<Future<List<Tag>>> results = new ArrayList<Future<List<Tag>>>();
+        long                    end     = System.currentTimeMillis() + moduleTimeout;
+        Module                  module;
+        
+        for(final Module m : modules){
+            if(optionalModules.contains(m) && deadline.skip(m.getClass().getSimpleName())){
+                results.add(null);
+                continue;
+            }
+            results.add(executor.submit(new Callable<List<Tag>>() {
+                @Override
+                public List<Tag> call() throws TaggingException {
+                    return m.getTags(profile);
+                }
+            }));
+        }
+        
+        try{
+            for(int i = 0; i < modules.size(); i++){
+                module = modules.get(i);
+                if(results.get(i) == null) continue;                            //skipped optional module
+                try{
+                    long wait = moduleTimeout > 0 ? Math.max(end - System.currentTimeMillis(), 0) : Long.MAX_VALUE;
+                    if(optionalModules.contains(module)){
+                        wait = Math.min(wait, deadline.remaining());            //required modules are not bound by the deadline
+                    }
+                    if(wait != Long.MAX_VALUE){
+                        tags.addAll(results.get(i).get(wait, TimeUnit.MILLISECONDS));
+                    }else{
+                        tags.addAll(results.get(i).get());
+                    }
+                }catch(TimeoutException e){
+                    results.get(i).cancel(true);
+                    deadline.degrade("tags of "+module.getClass().getSimpleName()+", timed out");
+                }catch(ExecutionException e){
+                    if(e.getCause() instanceof TaggingException) throw (TaggingException) e.getCause();
+                    throw new TaggingException(e.getCause(), module.getClass());
+                }
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new TaggingException(e, getClass());
+        }finally{
+            for(Future<List<Tag>> result : results){
+                if(result != null) result.cancel(true);                         //stop remaining modules on errors
+            }
         }
     }
     
@@ -58,6 +177,18 @@ public class Tagger{
     }
     
     
+    /**
+     * Adds the specified processing to the filter list. Optional processors
+     * are skipped when the deadline is exceeded.
+     * @param processor 
+     * @param optional 
+     */
+    public void addProcessor(ITagProcessor processor, boolean optional){
+        addProcessor(processor);
+        if(optional) this.optional.add(processor);
+    }
+    
+    
     /**
      * Executes the processing - calling all processors which were added and
      * reducing the result list to the size which was specified in config
@@ -65,6 +196,7 @@ public class Tagger{
      */
     public void processTags() throws PostProcessingException{
         for(ITagProcessor filter : filters){
+            if(optional.contains(filter) && deadline.skip(filter.getClass().getSimpleName())) continue;
             filter.process(tags);
         }
         Logger.getLogger(Config.EVENT_LOGGER).info("- Tags after post processing:"+tags.size());
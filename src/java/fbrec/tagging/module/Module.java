@@ -1,6 +1,7 @@
 package fbrec.tagging.module;
 
 import fbrec.control.Config;
+import fbrec.control.Deadline;
 import fbrec.error.TaggingException;
 import fbrec.tagging.FbConnector.FbProfile;
 import fbrec.model.Tag;
@@ -19,11 +20,17 @@ public abstract class Module {
     protected List<Tag>     tags;
     protected double        weight;     //weighting factor of this module
     protected int           numResults;
+    protected Deadline      deadline;   //time budget of the process, checked during tag generation
     
     public Module(double weight, int numResults) {
         this.weight   = weight;
+        this.deadline = new Deadline(0);
         tags = new ArrayList<Tag>();
     }
+    
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
    
     /**
      * retrieves the data from facebook.
@@ -1,6 +1,5 @@
 package fbrec.tagging.module;
 
-import com.google.common.base.Joiner;
 import fbrec.control.Config;
 import fbrec.error.TaggingException;
 import fbrec.tagging.FbConnector.FbMessage;
@@ -8,29 +7,18 @@ import fbrec.tagging.FbConnector.FbStatus;
 import fbrec.model.Tag;
 import fbrec.tagging.FbConnector.FbFriend;
 import fbrec.util.FriendsTokenFilter;
-import fbrec.util.PosFilter;
-import java.io.FileReader;
+import fbrec.util.PosTextAnalyzer;
 import java.io.IOException;
+import java.io.Reader;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.logging.Level;
-import java.util.regex.Pattern;
 import org.apache.log4j.Logger;
 import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.core.LowerCaseFilter;
-import org.apache.lucene.analysis.core.StopFilter;
-import org.apache.lucene.analysis.de.GermanAnalyzer;
-import org.apache.lucene.analysis.de.GermanNormalizationFilter;
-import org.apache.lucene.analysis.miscellaneous.LengthFilter;
-import org.apache.lucene.analysis.pattern.PatternReplaceFilter;
-import org.apache.lucene.analysis.standard.StandardTokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.util.CharArraySet;
-import org.apache.lucene.analysis.util.WordlistLoader;
-import org.apache.lucene.util.Version;
 
 
 
@@ -65,15 +53,24 @@ public class PosTextModule extends Module {
     @Override
     protected void generateTags() throws TaggingException{
         try {
-            String              document        = generateDocument();           //document created from all texts
-            int                 count           = 0;
-            List<TfTerm>        termList;
+            int                     count           = 0;
+            List<TfTerm>            termList;
+            HashMap<String, TfTerm> frequencies     = new HashMap<String, TfTerm>();
+            CharArraySet            friendNames     = FriendsTokenFilter.names(friends);  //collected once per profile
+            PosTextAnalyzer         analyzer        = new PosTextAnalyzer(Config.get().GERMAN_STOPWORDS, allowedPos, friendNames, deadline);
             
-            //execute pos filtering
-            document   = PosFilter.filter(document, allowedPos);
+            //execute pos filtering on all texts, the analyzer reuses its tokenizer for every post
+            try{
+                for(Reader text : texts()){
+                    if(deadline.skip("POS tagging of remaining posts")) break;  //keep words of the posts tagged so far
+                    countFrequencies(analyzer.tokenStream("text", text), frequencies);
+                }
+            }finally{
+                analyzer.close();
+            }
             
             //get occourences
-            termList   = getFrequencies(tokenizeAndFilter(document));
+            termList   = new ArrayList<TfTerm>(frequencies.values());
             
             //sort
             Collections.sort(termList, Collections.reverseOrder());
@@ -93,72 +90,53 @@ public class PosTextModule extends Module {
     
     
     /**
-     * Generates a document from the posts-list retrieved from facebook.
-     * For Use in tf-idf matrix
+     * Returns a reader for each post retrieved from facebook.
+     * The posts are not joined to one document, they are tagged one after another.
      * @return 
      */
-    private String generateDocument(){
-        String  result = "";
-        Joiner  joiner  = Joiner.on(" ");
-        if(statuses != null) result += joiner.join(statuses);
+    private List<Reader> texts(){
+        List<Reader> result = new ArrayList<Reader>();
+        if(statuses != null){
+            for(FbStatus status : statuses){
+                if(status.message != null) result.add(new StringReader(status.message));
+            }
+        }
         else Logger.getLogger(Config.EVENT_LOGGER).warn("status messages could not be retrieved.");
         
-        if(outbox != null) result += joiner.join(outbox);
+        if(outbox != null){
+            for(FbMessage message : outbox){
+                if(message.message != null) result.add(new StringReader(message.message));
+            }
+        }
         else Logger.getLogger(Config.EVENT_LOGGER).warn("outbox messages could not be retrieved.");
 
         return result;
     }
    
     
-    protected CharArraySet loadStopwords(){                
-        //try to load stopwords file
-        CharArraySet stopWords;
-        try {
-            FileReader fr = Config.loadFile(Config.GERMAN_STOPWORD_FILE);
-            stopWords  = WordlistLoader.getSnowballWordSet(fr, Version.LUCENE_40);
-            fr.close();
-        } catch (IOException ex) {
-            java.util.logging.Logger.getLogger(Config.EVENT_LOGGER).log(Level.WARNING, "Unable to open stop word list, using default instead", ex);
-            stopWords = GermanAnalyzer.getDefaultStopSet();
-        }
-        return stopWords;
-    }
-    
     /**
-     * Returns a TokenStream for given String.
-     * Applies filters to improve data quality
-     * @param str
-     * @return 
+     * Counts the tokens of the given stream, the stream is ended and closed afterwards
+     * @param tokenStream
+     * @param frequencies   token => frequency, updated
+     * @throws IOException 
      */
-    protected TokenStream tokenizeAndFilter(String str){
-        //tokenize
-        TokenStream tokenStream = new StandardTokenizer(Version.LUCENE_40, new StringReader(str));        
-        tokenStream = new LengthFilter(true, tokenStream, 3, 100);                                  //remove empty and single letter tokens
-        tokenStream = new LowerCaseFilter(Version.LUCENE_40, tokenStream);                          //lower case all tokens
-        tokenStream = new GermanNormalizationFilter(tokenStream);                                   //apply german normalization (eg. ae vs ä)
-        tokenStream = new StopFilter(Version.LUCENE_40, tokenStream, loadStopwords());              //stop word filtering
-        tokenStream = new FriendsTokenFilter(tokenStream, friends);
-
-        return tokenStream;
-    }
-    
-    
-    private List<TfTerm> getFrequencies(TokenStream tokenStream) throws IOException{
+    private void countFrequencies(TokenStream tokenStream, HashMap<String, TfTerm> frequencies) throws IOException{
         CharTermAttribute   charTermAttribute   = tokenStream.addAttribute(CharTermAttribute.class);
         String              token;
         
-        HashMap<String, TfTerm> temp = new HashMap<String, TfTerm>();
         //iterate over tokens
+        tokenStream.reset();
         while(tokenStream.incrementToken()){
             token   = charTermAttribute.toString();
             
-            if(temp.containsKey(token)){
-                temp.get(token).tf += 1;
+            if(frequencies.containsKey(token)){
+                frequencies.get(token).tf += 1;
             }else{
-                temp.put(token, new TfTerm(token, 1));
+                frequencies.put(token, new TfTerm(token, 1));
             }
         }
-        return new ArrayList<TfTerm>(temp.values());       
+        tokenStream.end();
+        tokenStream.close();
     }
     
     private class TfTerm implements Comparable{
@@ -1,9 +1,8 @@
 package fbrec.tagging.processing;
 
-import de.tuebingen.uni.sfs.germanet.api.GermaNet;
-import de.tuebingen.uni.sfs.germanet.api.Synset;
 import fbrec.control.Config;
 import fbrec.model.Tag;
+import fbrec.util.SynonymService;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.List;
@@ -22,15 +21,15 @@ public class SemanticsEnhancer implements ITagProcessor{
     public void process(List<Tag> tags) {
         try {
             Logger.getLogger(Config.EVENT_LOGGER).info("-- "+this.getClass().toString()+" called...");
-            GermaNet        gnet = new GermaNet(Config.getFile(Config.GERMANET_DIR));
-            List<Synset>    synsets;
+            SynonymService  synonyms = SynonymService.getInstance();           //shared GermaNet lookup, loaded only once
+            List<String>    orthForms;
             
             for(Tag tag : tags){
-                synsets = gnet.getSynsets(tag.text);                            //get Synset if exists
+                orthForms = synonyms.orthForms(tag.text);                       //get orthforms of synsets if exist
                 
-                for(Synset synset :synsets){
+                if(!orthForms.isEmpty()){
                     Logger.getLogger(Config.EVENT_LOGGER).debug("found synset for tag: "+tag);
-                    tag.wordPool.addAll(synset.getAllOrthForms());              //add all corresponding orthforms to wordpool
+                    tag.wordPool.addAll(orthForms);                             //add all corresponding orthforms to wordpool
                 }
             }
         } catch (FileNotFoundException ex) {
@@ -2,11 +2,16 @@ package fbrec.tagging.processing;
 
 import fbrec.control.Config;
 import fbrec.model.Tag;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.apache.log4j.Logger;
 
 /**
  * Removes duplicates from the tag list.
+ * The first tag of a text is kept at its position, the scores, sources and bases
+ * of its duplicates are added to it. Tags are found by their text in a hash map,
+ * so the list is processed in a single pass.
  * @author Daniel
  */
 public class TagDuplicateFilter implements ITagProcessor{
@@ -15,21 +20,24 @@ public class TagDuplicateFilter implements ITagProcessor{
     public void process(List<Tag> tags) {
         Logger.getLogger(Config.EVENT_LOGGER).info("-- "+this.getClass().toString()+" called...");
         
-        //find real duplicates
-        Tag tag1, tag2;
-        for(int i = 0; i < tags.size(); i++){ 
-            tag1 = tags.get(i);                                                 //element whoose duplicates are searched
-            for(int k = i+1; k < tags.size(); k++){                             //iterate over rest of list for comparison
-                tag2 = tags.get(k);
-                if(tag1.equals(tag2)){                                          //check if elements are equal
-                    Logger.getLogger(Config.EVENT_LOGGER).debug("tag removed: "+tag1);
-                    
-                    tag1.score = tag1.score+tag2.score;                         //global scores are added
-                    tag1.source.addAll(tag2.source);                            //source sets are combined
-                    tag1.base.addAll(tag2.base);                                //base sets are combined
-                    tags.remove(k);                                             //remove duplicate                
-                }
+        Map<String, Tag>    first = new HashMap<String, Tag>(tags.size() * 2);  //text => first tag with this text
+        Tag                 tag1, tag2;
+        int                 kept  = 0;                                          //number of tags kept so far
+        
+        for(int i = 0; i < tags.size(); i++){
+            tag2 = tags.get(i);
+            tag1 = first.get(tag2.text);
+            if(tag1 == null){
+                first.put(tag2.text, tag2);
+                tags.set(kept++, tag2);                                         //move tag to the front, behind the kept ones
+            }else{
+                Logger.getLogger(Config.EVENT_LOGGER).debug("tag removed: "+tag1);
+                
+                tag1.score = tag1.score+tag2.score;                             //global scores are added
+                tag1.source.addAll(tag2.source);                                //source sets are combined
+                tag1.base.addAll(tag2.base);                                    //base sets are combined
             }
         }
+        tags.subList(kept, tags.size()).clear();                                //remove duplicates at once
     }
 }
@@ -6,13 +6,19 @@ package fbrec.tagging.processing;
 
 import fbrec.control.Config;
 import fbrec.model.Tag;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
-import org.apache.log4j.Level;
+import java.util.PriorityQueue;
+import java.util.Set;
 import org.apache.log4j.Logger;
 
 /**
 * Reduces the size of the Tag-List based on given parameters
+* The remaining tags are sorted by descending score. Only the kept tags are
+* sorted, they are selected with a heap bounded to the new size.
 **/
 public class TagListTrimmer implements ITagProcessor{
     int    newSize;
@@ -31,23 +37,59 @@ public class TagListTrimmer implements ITagProcessor{
     @Override
     public void process(List<Tag> tags) {
         Logger.getLogger(Config.EVENT_LOGGER).info("-- "+this.getClass().toString()+" called...");
-        //sort
-        Collections.sort(tags, Collections.reverseOrder());                                      
         
         //check if new size is bigger than current size
-        if(newSize > tags.size()){                                              //new size is bigger => do nothing
-            Logger.getLogger(Config.EVENT_LOGGER).warn("There are less tags than demanded! No Elements removed.");
-        }else if(newSize < tags.size()){                                        //new size is smaller => remove elements
-            Logger.getLogger(Config.EVENT_LOGGER).info(newSize-tags.size()+" elements removed");
-            List<Tag> remove = tags.subList(newSize, tags.size());
-            
-            if(Logger.getLogger(Config.EVENT_LOGGER).getLevel().equals(Level.DEBUG)){
-                for(Tag tag : remove){
-                    Logger.getLogger(Config.EVENT_LOGGER).debug("tag removed: "+tag);
-                }
+        if(newSize >= tags.size()){                                             //new size is bigger => only sort
+            if(newSize > tags.size()){
+                Logger.getLogger(Config.EVENT_LOGGER).warn("There are less tags than demanded! No Elements removed.");
             }
-            
-            remove.clear();
-        }        
+            Collections.sort(tags, Collections.reverseOrder());
+            return;
+        }
+        
+        //new size is smaller => select best tags with a bounded heap instead of sorting all tags
+        Logger.getLogger(Config.EVENT_LOGGER).info(tags.size()-newSize+" elements removed");
+        List<Tag> best = top(tags, newSize);
+        
+        if(Logger.getLogger(Config.EVENT_LOGGER).isDebugEnabled()){
+            Set<Tag> kept = Collections.newSetFromMap(new IdentityHashMap<Tag, Boolean>());
+            kept.addAll(best);
+            for(Tag tag : tags){
+                if(!kept.contains(tag)) Logger.getLogger(Config.EVENT_LOGGER).debug("tag removed: "+tag);
+            }
+        }
+        
+        tags.clear();
+        tags.addAll(best);
+    }
+    
+    
+    /**
+     * Returns the n tags with the highest scores in descending order.
+     * Tags with equal scores keep their order, like in a stable sort.
+     * @param tags
+     * @param n
+     * @return 
+     */
+    static List<Tag> top(final List<Tag> tags, int n){
+        //heap of positions, the worst tag is on top: lower score or later position for equal scores
+        Comparator<Integer> worstFirst = new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int result = tags.get(a).compareTo(tags.get(b));
+                return result != 0 ? result : b.compareTo(a);
+            }
+        };
+        PriorityQueue<Integer> heap = new PriorityQueue<Integer>(n + 1, worstFirst);
+        for(int i = 0; i < tags.size(); i++){
+            heap.add(i);
+            if(heap.size() > n) heap.poll();                                    //remove worst
+        }
+        
+        Tag[] result = new Tag[heap.size()];
+        for(int i = result.length - 1; i >= 0; i--){                            //worst first => fill from the end
+            result[i] = tags.get(heap.poll());
+        }
+        return Arrays.asList(result);
     }
 }
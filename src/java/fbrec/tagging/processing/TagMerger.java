@@ -2,11 +2,17 @@ package fbrec.tagging.processing;
 
 import fbrec.control.Config;
 import fbrec.model.Tag;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.apache.log4j.Logger;
 
 /**
  * Merges tags which occour in the word pool of another.
+ * A tag is merged into all following tags containing its text in their word pool
+ * and removed afterwards. The tags containing a text are looked up in an inverted
+ * index of the word pools instead of comparing all pairs of tags.
  * @author Daniel
  */
 public class TagMerger implements ITagProcessor{
@@ -15,42 +21,44 @@ public class TagMerger implements ITagProcessor{
     public void process(List<Tag> tags) {
         Logger.getLogger(Config.EVENT_LOGGER).info("-- "+this.getClass().toString()+" called...");
         
-        boolean isMerged;
-        Tag tag1, tag2;
+        Map<String, List<Integer>>  pools = new HashMap<String, List<Integer>>();   //word => positions of the tags with the word in their pool, ascending
+        List<Integer>               positions;
+        boolean                     isMerged;
+        Tag                         tag1, tag2;
+        int                         kept  = 0;                                  //number of tags kept so far
+        
+        //build inverted index of the word pools
+        for(int k = 0; k < tags.size(); k++){
+            for(String word : tags.get(k).wordPool){
+                positions = pools.get(word);
+                if(positions == null){
+                    positions = new ArrayList<Integer>(2);
+                    pools.put(word, positions);
+                }
+                positions.add(k);
+            }
+        }
+        
         for(int i = 0; i < tags.size(); i++){ 
-            isMerged = false;
-            tag1     = tags.get(i);                                             //element whoose duplicates are searched
-            for(int k = i+1; k < tags.size(); k++){                             //iterate over rest of list for comparison
-                tag2 = tags.get(k);
-                if(tag2.wordPool.contains(tag1.text)){                          //check if tag's wordPool contains tag1
+            isMerged  = false;
+            tag1      = tags.get(i);                                            //element whoose duplicates are searched
+            positions = pools.get(tag1.text);
+            if(positions != null){
+                for(int k : positions){                                         //tags whose wordPool contains tag1
+                    if(k <= i) continue;                                        //only following tags are merged
+                    tag2 = tags.get(k);
                     tag2.score = tag1.score+tag2.score;                         //change attributes
                     tag2.source.addAll(tag1.source);
                     tag2.base.addAll(tag1.base);
-                    isMerged = true;                                                                
+                    isMerged = true;
                 }
             }
             if(isMerged){
                 Logger.getLogger(Config.EVENT_LOGGER).debug("tag merged: "+tag1);
-                
-                tags.remove(i);
-            }                                        //remove merged tag           
-        }
-        
-        //todo: testen!!
-        
-        /**
-        Tag tag1, tag2;
-        for(int i = 0; i < tags.size(); i++){ 
-            tag1 = tags.get(i);                                                 //element whoose duplicates are searched
-            for(int k = i+1; k < tags.size(); k++){                             //iterate over rest of list for comparison
-                tag2 = tags.get(k);
-                if(tag1.equalsSemantically(tag2)){                              //check if elements are equal
-                    tag1.score = tag1.score+tag2.score;                         //global scores are added
-                    tag1.source.addAll(tag2.source);
-                    tag1.base.addAll(tag2.base);
-                    tags.remove(k);                                             //remove duplicate
-                }
+            }else{
+                tags.set(kept++, tag1);                                         //keep unmerged tag, merged ones are overwritten
             }
-        }*/
+        }
+        tags.subList(kept, tags.size()).clear();                                //remove merged tags at once
     }
 }
@@ -29,26 +29,37 @@ public class TresholdFilter implements ITagProcessor{
     @Override
     public void process(List<Tag> tags) {
         Logger.getLogger(Config.EVENT_LOGGER).info("-- "+this.getClass().toString()+" called...");
+        if(tags.isEmpty()) return;
         
         Tag     tag;
         double  treshold;
         double  lowestScore;
+        double  minScore    = Double.POSITIVE_INFINITY;
+        double  maxScore    = Double.NEGATIVE_INFINITY;
+        int     kept        = 0;                                                //number of tags kept so far
         
-        Collections.sort(tags);
-        lowestScore = 0; //tags.get(0).score;
-        treshold = Math.max(tags.get(tags.size()-1).score * percentage, lowestScore);
+        for(Tag t : tags){
+            minScore = Math.min(minScore, t.score);
+            maxScore = Math.max(maxScore, t.score);
+        }
+        lowestScore = 0; //minScore;
+        treshold = Math.max(maxScore * percentage, lowestScore);
         
-        if(tags.get(0).score == tags.get(tags.size()-1).score) return;          //all have same score -> no filtering
+        if(minScore == maxScore){                                               //all have same score -> no filtering
+            Collections.sort(tags);
+            return;
+        }
         
         for(int i = 0; i < tags.size(); i++){
             tag = tags.get(i);
             if(tag.score <= treshold){                                          //remove all elements with a score smaller or eqal the treshold
                 Logger.getLogger(Config.EVENT_LOGGER).debug("tag removed: "+tag);
-                
-                tags.remove(tag);
-                i--;                                                            //decrement because list size was reduced with removal
+            }else{
+                tags.set(kept++, tag);
             }
         }
+        tags.subList(kept, tags.size()).clear();                                //remove filtered tags at once
+        Collections.sort(tags);                                                 //only the remaining tags are sorted
     }
 
 }
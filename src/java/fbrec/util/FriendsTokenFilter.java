@@ -5,37 +5,92 @@
 package fbrec.util;
 
 import fbrec.tagging.FbConnector.FbFriend;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.List;
-
-import org.apache.lucene.analysis.util.FilteringTokenFilter;
+import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+import org.apache.lucene.analysis.de.GermanNormalizationFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.util.CharArraySet;
+import org.apache.lucene.analysis.util.FilteringTokenFilter;
+import org.apache.lucene.util.Version;
 
 /**
- *
+ * Removes tokens which are first or last names of friends of the user.
+ * The names are collected once per profile in a set (see {@link #names(List)}),
+ * tokens are looked up in the set directly from the term buffer. The tokens
+ * have to be lower case and german normalized like the names.
+ * @author Daniel
  */
 public class FriendsTokenFilter extends FilteringTokenFilter {
-  private CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
-  private List<FbFriend> friends;
-  
-  /**
-   *
-   */
-  public FriendsTokenFilter(TokenStream in, List<FbFriend> friends){
-    super(true, in);
-    this.friends = friends;
-  }
-
-  
-  /**
-   * Returns the next input Token whose term() is not a Friend.
-   */
-  @Override
-  protected boolean accept() {
-    for(FbFriend friend: friends){
-        if(termAtt.toString().toLowerCase().equals(friend.firstName.toLowerCase())) return false;
+    private static final Analyzer   NAME_ANALYZER = new NameAnalyzer();         //normalizes names like the posts
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final CharArraySet      names;                                      //normalized names of the friends
+
+    /**
+     * @param in        stream of lower case and german normalized tokens
+     * @param names     normalized names of the friends, see {@link #names(List)}
+     */
+    public FriendsTokenFilter(TokenStream in, CharArraySet names){
+        super(true, in);
+        this.names = names;
+    }
+
+
+    /**
+     * Returns the first and last names of the given friends, lower case and
+     * german normalized. Names consisting of several words are split.
+     * @param friends
+     * @return
+     * @throws IOException
+     */
+    public static CharArraySet names(List<FbFriend> friends) throws IOException{
+        CharArraySet result = new CharArraySet(Version.LUCENE_40, friends == null ? 0 : friends.size() * 2, false);
+        if(friends == null) return result;
+
+        for(FbFriend friend : friends){
+            addName(result, friend.firstName);
+            addName(result, friend.lastName);
+        }
+        return result;
     }
-    return true;
-  }
 
+
+    /**
+     * Accepts the current token if it is not the name of a friend
+     */
+    @Override
+    protected boolean accept() {
+        return !names.contains(termAtt.buffer(), 0, termAtt.length());
+    }
+
+
+    private static void addName(CharArraySet result, String name) throws IOException{
+        if(name == null) return;
+        TokenStream       tokenStream = NAME_ANALYZER.tokenStream("name", new StringReader(name));
+        CharTermAttribute term        = tokenStream.addAttribute(CharTermAttribute.class);
+        tokenStream.reset();
+        while(tokenStream.incrementToken()){
+            result.add(term.toString());
+        }
+        tokenStream.end();
+        tokenStream.close();
+    }
+
+
+    //splits names into lower case and german normalized words
+    private static final class NameAnalyzer extends Analyzer {
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
+            Tokenizer   source      = new StandardTokenizer(Version.LUCENE_40, reader);
+            TokenStream tokenStream = new LowerCaseFilter(Version.LUCENE_40, source);
+            tokenStream = new GermanNormalizationFilter(tokenStream);
+            return new TokenStreamComponents(source, tokenStream);
+        }
+    }
 }
@@ -0,0 +1,193 @@
+package fbrec.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Read-only view on a GermaNet snapshot file created by {@link GermaNetSnapshotCompiler}.
+ * The file is memory mapped, lookups are done directly on the mapped buffer
+ * without parsing or materializing the whole data set.
+ *
+ * File layout (all ints big endian):
+ * <pre>
+ * header           MAGIC, VERSION, numStrings, numSynsets, numMembers, numRefs, tableSize, dataLength
+ * stringOffsets    int[numStrings+1]   offset of each orthform in the string data
+ * synsetOffsets    int[numSynsets+1]   offset of each synset in the member array
+ * members          int[numMembers]     string ids of the orthforms of each synset
+ * refOffsets       int[numStrings+1]   offset of each orthform in the reference array
+ * refs             int[numRefs]        synset ids each orthform occours in
+ * table            int[tableSize]      open addressing hash index, string id+1 (0 = empty slot)
+ * data             byte[dataLength]    UTF-8 encoded orthforms
+ * </pre>
+ * Only absolute buffer access is used, so an instance can be shared between threads.
+ * @author Daniel
+ */
+public class GermaNetSnapshot {
+    static final int    MAGIC       = 0x46424E53;                               //"FBNS"
+    static final int    VERSION     = 1;
+    static final int    HEADER_SIZE = 8*4;
+    static final String ENCODING    = "UTF-8";
+
+    private final ByteBuffer buffer;
+    private final int numStrings;
+    private final int tableSize;
+    private final int stringOffsets;                                            //positions of the sections in the buffer
+    private final int synsetOffsets;
+    private final int members;
+    private final int refOffsets;
+    private final int refs;
+    private final int table;
+    private final int data;
+
+    private GermaNetSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION){
+            throw new IOException("Not a GermaNet snapshot or unsupported version.");
+        }
+        numStrings      = buffer.getInt(8);
+        int numSynsets  = buffer.getInt(12);
+        int numMembers  = buffer.getInt(16);
+        int numRefs     = buffer.getInt(20);
+        tableSize       = buffer.getInt(24);
+
+        stringOffsets   = HEADER_SIZE;
+        synsetOffsets   = stringOffsets + (numStrings+1)*4;
+        members         = synsetOffsets + (numSynsets+1)*4;
+        refOffsets      = members       + numMembers*4;
+        refs            = refOffsets    + (numStrings+1)*4;
+        table           = refs          + numRefs*4;
+        data            = table         + tableSize*4;
+
+        if(data + buffer.getInt(28) != buffer.limit()){
+            throw new IOException("GermaNet snapshot is truncated or corrupt.");
+        }
+    }
+
+
+    /**
+     * Opens the given snapshot file by mapping it into memory
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static GermaNetSnapshot open(File file) throws IOException{
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try{
+            FileChannel channel = raf.getChannel();
+            return new GermaNetSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }finally{
+            raf.close();                                                        //mapping stays valid after closing
+        }
+    }
+
+
+    /**
+     * Returns all orthforms of all synsets containing the given orthform.
+     * The lookup is case sensitive. Returns an empty list when the orthform is unknown.
+     * @param orthForm
+     * @return
+     */
+    public List<String> orthForms(String orthForm){
+        int id = find(encode(orthForm));
+        if(id < 0) return Collections.<String>emptyList();
+
+        Set<String> result = new LinkedHashSet<String>();
+        int synset;
+        for(int r = intAt(refOffsets, id); r < intAt(refOffsets, id+1); r++){   //iterate over synsets of the orthform
+            synset = intAt(refs, r);
+            for(int m = intAt(synsetOffsets, synset); m < intAt(synsetOffsets, synset+1); m++){
+                result.add(string(intAt(members, m)));                          //collect orthforms of the synset
+            }
+        }
+        return new ArrayList<String>(result);
+    }
+
+
+    /**
+     * Returns the number of orthforms in the snapshot
+     * @return
+     */
+    public int size(){
+        return numStrings;
+    }
+
+
+    /**
+     * Searches the hash index for the given UTF-8 encoded orthform
+     * @param key
+     * @return string id or -1 if not found
+     */
+    private int find(byte[] key){
+        int mask = tableSize-1;
+        int slot = hash(key) & mask;
+        int id;
+        while((id = intAt(table, slot)-1) >= 0){                                //linear probing until empty slot
+            if(equalsString(id, key)) return id;
+            slot = (slot+1) & mask;
+        }
+        return -1;
+    }
+
+    private boolean equalsString(int id, byte[] key){
+        int start = intAt(stringOffsets, id);
+        int end   = intAt(stringOffsets, id+1);
+        if(end-start != key.length) return false;
+        for(int i = 0; i < key.length; i++){
+            if(buffer.get(data+start+i) != key[i]) return false;
+        }
+        return true;
+    }
+
+    private String string(int id){
+        int    start = intAt(stringOffsets, id);
+        byte[] bytes = new byte[intAt(stringOffsets, id+1)-start];
+        for(int i = 0; i < bytes.length; i++){
+            bytes[i] = buffer.get(data+start+i);
+        }
+        return decode(bytes);
+    }
+
+    private int intAt(int section, int index){
+        return buffer.getInt(section+index*4);
+    }
+
+
+    /**
+     * FNV-1a hash over the given bytes, used by the compiler and the reader
+     * @param bytes
+     * @return
+     */
+    static int hash(byte[] bytes){
+        int hash = 0x811C9DC5;
+        for(byte b : bytes){
+            hash ^= (b & 0xFF);
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+    static byte[] encode(String str){
+        try{
+            return str.getBytes(ENCODING);
+        }catch(UnsupportedEncodingException e){
+            throw new IllegalStateException(e);                                 //UTF-8 is always supported
+        }
+    }
+
+    static String decode(byte[] bytes){
+        try{
+            return new String(bytes, ENCODING);
+        }catch(UnsupportedEncodingException e){
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package fbrec.util;
+
+import de.tuebingen.uni.sfs.germanet.api.GermaNet;
+import de.tuebingen.uni.sfs.germanet.api.Synset;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Offline tool which compiles the GermaNet xml files into a single snapshot
+ * file readable by {@link GermaNetSnapshot}.
+ * Usage: GermaNetSnapshotCompiler &lt;germanet directory&gt; &lt;snapshot file&gt;
+ * @author Daniel
+ */
+public class GermaNetSnapshotCompiler {
+    private List<byte[]>            strings     = new ArrayList<byte[]>();      //id -> encoded orthform
+    private Map<String, Integer>    stringIds   = new HashMap<String, Integer>();//orthform -> id
+    private List<int[]>             synsets     = new ArrayList<int[]>();       //id -> string ids of the orthforms
+    private List<List<Integer>>     refs        = new ArrayList<List<Integer>>();//string id -> synset ids
+    private int                     numMembers  = 0;
+    private int                     numRefs     = 0;
+    private int                     dataLength  = 0;
+
+    public static void main(String[] args) throws IOException, XMLStreamException{
+        if(args.length != 2){
+            System.err.println("Usage: GermaNetSnapshotCompiler <germanet directory> <snapshot file>");
+            System.exit(1);
+        }
+        long start = System.currentTimeMillis();
+        GermaNetSnapshotCompiler compiler = new GermaNetSnapshotCompiler();
+        compiler.read(new GermaNet(new File(args[0])));
+        compiler.write(new File(args[1]));
+        System.out.println(compiler.strings.size()+" orthforms and "+compiler.synsets.size()+" synsets written to "+args[1]
+                           +" in "+(System.currentTimeMillis()-start)+"ms");
+    }
+
+
+    /**
+     * Collects orthforms and synsets of the given GermaNet instance
+     * @param gnet
+     */
+    public void read(GermaNet gnet){
+        Set<String> forms;
+        int[]       members;
+        int         i;
+        for(Synset synset : gnet.getSynsets()){
+            forms   = new LinkedHashSet<String>(synset.getAllOrthForms());      //orthforms may occour several times in a synset
+            members = new int[forms.size()];
+            i       = 0;
+            for(String form : forms){
+                members[i] = stringId(form);
+                refs.get(members[i]).add(synsets.size());
+                numRefs++;
+                i++;
+            }
+            numMembers += members.length;
+            synsets.add(members);
+        }
+    }
+
+    private int stringId(String form){
+        Integer id = stringIds.get(form);
+        if(id == null){
+            byte[] bytes = GermaNetSnapshot.encode(form);
+            id = strings.size();
+            stringIds.put(form, id);
+            strings.add(bytes);
+            refs.add(new ArrayList<Integer>(1));
+            dataLength += bytes.length;
+        }
+        return id;
+    }
+
+
+    /**
+     * Writes the collected data to the given file
+     * @param file
+     * @throws IOException
+     */
+    public void write(File file) throws IOException{
+        int     tableSize   = Integer.highestOneBit(Math.max(strings.size(), 1)*2-1)*2; //power of two, load factor <= 0.5
+        int[]   table       = new int[tableSize];
+        int     slot;
+        int     offset;
+
+        //build hash index
+        for(int id = 0; id < strings.size(); id++){
+            slot = GermaNetSnapshot.hash(strings.get(id)) & (tableSize-1);
+            while(table[slot] != 0){
+                slot = (slot+1) & (tableSize-1);
+            }
+            table[slot] = id+1;
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try{
+            //header
+            out.writeInt(GermaNetSnapshot.MAGIC);
+            out.writeInt(GermaNetSnapshot.VERSION);
+            out.writeInt(strings.size());
+            out.writeInt(synsets.size());
+            out.writeInt(numMembers);
+            out.writeInt(numRefs);
+            out.writeInt(tableSize);
+            out.writeInt(dataLength);
+
+            //string offsets
+            offset = 0;
+            for(byte[] str : strings){
+                out.writeInt(offset);
+                offset += str.length;
+            }
+            out.writeInt(offset);
+
+            //synset adjacency arrays
+            offset = 0;
+            for(int[] members : synsets){
+                out.writeInt(offset);
+                offset += members.length;
+            }
+            out.writeInt(offset);
+            for(int[] members : synsets){
+                for(int member : members){
+                    out.writeInt(member);
+                }
+            }
+
+            //orthform -> synset references
+            offset = 0;
+            for(List<Integer> stringRefs : refs){
+                out.writeInt(offset);
+                offset += stringRefs.size();
+            }
+            out.writeInt(offset);
+            for(List<Integer> stringRefs : refs){
+                for(int ref : stringRefs){
+                    out.writeInt(ref);
+                }
+            }
+
+            //hash index & string data
+            for(int entry : table){
+                out.writeInt(entry);
+            }
+            for(byte[] str : strings){
+                out.write(str);
+            }
+        }finally{
+            out.close();
+        }
+    }
+}
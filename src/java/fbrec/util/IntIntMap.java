@@ -0,0 +1,111 @@
+package fbrec.util;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from int to int without boxing.
+ * Open addressing with linear probing, the table is doubled when it is half
+ * full. Entries can not be removed, the map is meant to be filled once and
+ * cleared for reuse.
+ * @author Daniel
+ */
+public class IntIntMap {
+    private int[]       keys;
+    private int[]       values;
+    private boolean[]   used;                                                   //true if the slot contains an entry
+    private int         size;                                                   //number of entries
+    private int         mask;                                                   //table length - 1, length is a power of two
+
+    /**
+     * @param expectedSize  number of entries that fit without resizing
+     */
+    public IntIntMap(int expectedSize) {
+        int capacity = 16;
+        while(capacity < expectedSize * 2) capacity <<= 1;
+        allocate(capacity);
+    }
+
+
+    /**
+     * Returns the value of the key or the given default if the key is not contained
+     * @param key
+     * @param missing   value returned for unknown keys
+     * @return
+     */
+    public int get(int key, int missing){
+        int slot = slot(key);
+        return used[slot] ? values[slot] : missing;
+    }
+
+
+    /**
+     * Sets the value of the key
+     * @param key
+     * @param value
+     */
+    public void put(int key, int value){
+        int slot = slot(key);
+        if(!used[slot]){
+            used[slot] = true;
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+        if(size * 2 > keys.length) resize();
+    }
+
+
+    public int size(){
+        return size;
+    }
+
+
+    /**
+     * Removes all entries, the table keeps its capacity
+     */
+    public void clear(){
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+
+    /**
+     * Returns the slot containing the key or the free slot where it belongs
+     */
+    private int slot(int key){
+        int slot = mix(key) & mask;
+        while(used[slot] && keys[slot] != key){
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+
+    private void resize(){
+        int[]       oldKeys   = keys;
+        int[]       oldValues = values;
+        boolean[]   oldUsed   = used;
+        allocate(oldKeys.length * 2);
+        for(int i = 0; i < oldKeys.length; i++){
+            if(oldUsed[i]) put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+
+    private void allocate(int capacity){
+        keys   = new int[capacity];
+        values = new int[capacity];
+        used   = new boolean[capacity];
+        mask   = capacity - 1;
+        size   = 0;
+    }
+
+
+    /**
+     * Spreads the bits of the key, ids are often sequential
+     */
+    private static int mix(int key){
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
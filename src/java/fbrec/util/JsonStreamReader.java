@@ -0,0 +1,305 @@
+package fbrec.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Pull parser reading JSON from a stream without building a tree.
+ * The caller walks the document with begin/end/next methods, values that are
+ * not needed are skipped without being stored. String values can be read as
+ * Reader, so large or nested JSON embedded in a string is decoded on the fly.
+ * The reader is meant for documents of a known structure, it does not validate
+ * the document: separators are not checked.
+ * @author Daniel
+ */
+public class JsonStreamReader implements Closeable {
+    private final Reader    in;                                                 //source of the document
+    private final char[]    buffer;                                             //read ahead characters
+    private int             pos;                                                //next character in the buffer
+    private int             limit;                                              //number of valid characters in the buffer
+    private boolean         inString;                                           //true while a string is read by a string reader
+
+    public JsonStreamReader(Reader in) {
+        this.in     = in;
+        this.buffer = new char[8192];
+        this.pos    = 0;
+        this.limit  = 0;
+    }
+
+
+    public void beginObject() throws IOException{
+        expect('{');
+    }
+
+    public void endObject() throws IOException{
+        expect('}');
+    }
+
+    public void beginArray() throws IOException{
+        expect('[');
+    }
+
+    public void endArray() throws IOException{
+        expect(']');
+    }
+
+
+    /**
+     * Returns true if the current object or array has another element
+     * @return
+     * @throws IOException
+     */
+    public boolean hasNext() throws IOException{
+        int c = peekToken();
+        return c != '}' && c != ']' && c != -1;
+    }
+
+
+    /**
+     * Returns true if the next value is null
+     * @return
+     * @throws IOException
+     */
+    public boolean isNull() throws IOException{
+        return peekToken() == 'n';
+    }
+
+
+    /**
+     * Returns true if the next value is an object
+     * @return
+     * @throws IOException
+     */
+    public boolean isObject() throws IOException{
+        return peekToken() == '{';
+    }
+
+
+    /**
+     * Returns true if the next value is an array
+     * @return
+     * @throws IOException
+     */
+    public boolean isArray() throws IOException{
+        return peekToken() == '[';
+    }
+
+
+    /**
+     * Returns true if the next value is a string
+     * @return
+     * @throws IOException
+     */
+    public boolean isString() throws IOException{
+        return peekToken() == '"';
+    }
+
+
+    /**
+     * Reads the name of the next property
+     * @return
+     * @throws IOException
+     */
+    public String nextName() throws IOException{
+        return nextString();
+    }
+
+
+    /**
+     * Reads the next scalar value as string.
+     * Numbers and booleans are returned as written in the document, null as null.
+     * @return
+     * @throws IOException
+     */
+    public String nextString() throws IOException{
+        int c = peekToken();
+        if(c == '"'){
+            pos++;
+            StringBuilder result = new StringBuilder();
+            for(int ch = stringChar(); ch != -1; ch = stringChar()){
+                result.append((char) ch);
+            }
+            return result.toString();
+        }
+        if(c == '{' || c == '[' || c == -1) throw syntaxError("expected scalar value");
+
+        String literal = literal();
+        return literal.equals("null") ? null : literal;
+    }
+
+
+    /**
+     * Reads the next integer value
+     * @return
+     * @throws IOException
+     */
+    public int nextInt() throws IOException{
+        String value = nextString();
+        try{
+            return Integer.parseInt(value);
+        }catch(NumberFormatException e){
+            throw syntaxError("expected integer but was "+value);
+        }
+    }
+
+
+    /**
+     * Returns a reader decoding the next string value on the fly.
+     * The returned reader has to be read to its end before this reader is used again.
+     * @return
+     * @throws IOException
+     */
+    public Reader nextStringReader() throws IOException{
+        if(peekToken() != '"') throw syntaxError("expected string");
+        pos++;
+        inString = true;
+        return new Reader() {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                if(!inString) return -1;
+                int count = 0;
+                while(count < len){
+                    int ch = stringChar();
+                    if(ch == -1){
+                        inString = false;
+                        break;
+                    }
+                    cbuf[off + count++] = (char) ch;
+                }
+                return count == 0 && len > 0 ? -1 : count;
+            }
+
+            @Override
+            public void close() throws IOException {
+                while(inString) read(new char[256], 0, 256);                    //skip the rest of the string
+            }
+        };
+    }
+
+
+    /**
+     * Skips the next value including all nested values
+     * @throws IOException
+     */
+    public void skipValue() throws IOException{
+        int depth = 0;
+        do{
+            int c = peekToken();
+            switch(c){
+                case '{':
+                case '[':
+                    pos++;
+                    depth++;
+                    break;
+                case '}':
+                case ']':
+                    pos++;
+                    depth--;
+                    break;
+                case '"':
+                    pos++;
+                    while(stringChar() != -1);
+                    break;
+                case -1:
+                    throw new EOFException("unexpected end of json document");
+                default:
+                    literal();
+            }
+        }while(depth > 0);
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+
+    /**
+     * Returns the next character that is not whitespace or a separator without consuming it
+     */
+    private int peekToken() throws IOException{
+        while(true){
+            if(pos == limit && !fill()) return -1;
+            char c = buffer[pos];
+            if(c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == ',' || c == ':'){
+                pos++;
+            }else{
+                return c;
+            }
+        }
+    }
+
+
+    private void expect(char expected) throws IOException{
+        if(peekToken() != expected) throw syntaxError("expected '"+expected+"'");
+        pos++;
+    }
+
+
+    /**
+     * Reads an unquoted value (number, boolean, null)
+     */
+    private String literal() throws IOException{
+        StringBuilder result = new StringBuilder();
+        while(pos < limit || fill()){
+            char c = buffer[pos];
+            if(c == ',' || c == ':' || c == '}' || c == ']' || Character.isWhitespace(c)) break;
+            result.append(c);
+            pos++;
+        }
+        return result.toString();
+    }
+
+
+    /**
+     * Reads the next decoded character of a string, -1 at the closing quote
+     */
+    private int stringChar() throws IOException{
+        char c = read();
+        if(c == '"')  return -1;
+        if(c != '\\') return c;
+
+        c = read();
+        switch(c){
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'u':
+                int code = 0;
+                for(int i = 0; i < 4; i++){
+                    int digit = Character.digit(read(), 16);
+                    if(digit < 0) throw syntaxError("invalid unicode escape");
+                    code = code * 16 + digit;
+                }
+                return code;
+            default:  return c;                                                 //quote, backslash and slash
+        }
+    }
+
+
+    private char read() throws IOException{
+        if(pos == limit && !fill()) throw new EOFException("unexpected end of json document");
+        return buffer[pos++];
+    }
+
+
+    private boolean fill() throws IOException{
+        limit = in.read(buffer, 0, buffer.length);
+        pos   = 0;
+        if(limit <= 0){
+            limit = 0;
+            return false;
+        }
+        return true;
+    }
+
+
+    private IOException syntaxError(String message){
+        return new IOException("malformed json: "+message);
+    }
+}
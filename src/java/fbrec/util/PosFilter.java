@@ -7,43 +7,116 @@ package fbrec.util;
 import edu.stanford.nlp.ling.HasWord;
 import edu.stanford.nlp.ling.TaggedWord;
 import edu.stanford.nlp.tagger.maxent.MaxentTagger;
-import fbrec.control.Config;
+import fbrec.control.Deadline;
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.Reader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 
 /**
- *
+ * Tokenizer applying POS-Filtering to a text.
+ * The text is split into sentences and tagged when the first token is requested;
+ * only words with allowed POS-Tags are emitted as tokens. Texts are analyzed
+ * one after another by reusing the tokenizer (see {@link PosTextAnalyzer}),
+ * so the texts are never joined into one document.
+ * If no tagger is free until the deadline is exceeded, the text is left out.
  * @author Daniel
  */
-public class PosFilter {
-        /**
-     * Applies POS-Filtering to given document text.
-     * The text string must at least consist of one sentence.
-     * @param text          sentence or document that should be filtered
+public class PosFilter extends Tokenizer {
+    private static final long       TAGGER_WAIT = 30000;                        //ms to wait for a free tagger of the pool
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final Set<String>       allowedPos;                                 //allowed POS-Tags
+    private final List<String>      words;                                      //allowed words of the current text
+    private final Deadline          deadline;                                   //time budget, bounds the wait for a tagger
+    private int                     position;                                   //next word to emit
+    private boolean                 tagged;                                     //true if the current text was tagged
+
+    /**
+     * @param input         reader of the text that should be filtered
+     * @param allowedPos    allowed POS-Tags according to Stuttgard - Tübingen-Tagset
+     */
+    public PosFilter(Reader input, String[] allowedPos) {
+        this(input, allowedPos, new Deadline(0));
+    }
+
+    /**
+     * @param input         reader of the text that should be filtered
      * @param allowedPos    allowed POS-Tags according to Stuttgard - Tübingen-Tagset
-     * @return  text consisting only of words with allowed pos tags
+     * @param deadline      time budget of the process
+     */
+    public PosFilter(Reader input, String[] allowedPos, Deadline deadline) {
+        super(input);
+        this.allowedPos = new HashSet<String>(Arrays.asList(allowedPos));
+        this.words      = new ArrayList<String>();
+        this.deadline   = deadline;
+        this.position   = 0;
+        this.tagged     = false;
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if(!tagged){                                                            //tag text on first request
+            tag(input);
+            tagged = true;
+        }
+        if(position >= words.size()) return false;
+        clearAttributes();
+        termAtt.setEmpty().append(words.get(position++));
+        return true;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        words.clear();
+        position = 0;
+        tagged   = false;
+    }
+
+
+    /**
+     * Tags the given text and stores the words with allowed POS-Tags.
+     * A tagger is only taken from the pool for the duration of this call, the
+     * wait for a free tagger is bounded by the deadline.
+     * @param text
      * @throws IOException
-     * @throws ClassNotFoundException 
      */
-    public static String filter(String text, String[] allowedPos) throws IOException, ClassNotFoundException{
-        String              filteredText    = "";
+    private void tag(Reader text) throws IOException{
+        List<List<HasWord>> untaggedSentences;
+        PosTaggerPool       pool    = PosTaggerPool.getInstance();
         MaxentTagger        posTagger;
-        List<List<HasWord>> untaggedSentence;
-        List<TaggedWord>    taggedSentence;
-           
-        posTagger        = new MaxentTagger(Config.POS_MODEL_FILE);             //load tagger
-        untaggedSentence = MaxentTagger.tokenizeText(new StringReader(text));   //tokenize
-                
-        for(List<HasWord> sentence : untaggedSentence){
-            taggedSentence = posTagger.tagSentence(sentence);                   //tag sentence
-            for(TaggedWord word : taggedSentence){  
-                if(Arrays.asList(allowedPos).contains(word.tag())){             //filter sentence
-                    filteredText += " "+word.value();                           //reconcatenate
+        long                wait    = Math.min(TAGGER_WAIT, deadline.remaining());
+
+        words.clear();
+        position = 0;
+        untaggedSentences = MaxentTagger.tokenizeText(text);                    //tokenize, the reader is closed with the tokenizer
+        if(untaggedSentences.isEmpty()) return;
+
+        try{
+            posTagger = pool.acquire(wait);                                     //get tagger, model is only loaded once
+        }catch(ClassNotFoundException e){
+            throw new IOException(e);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        if(posTagger == null && deadline.skip("POS tagging of a post, no free tagger")) return;
+        if(posTagger == null) throw new IOException("no POS tagger was released within "+wait+"ms");
+        try{
+            for(List<HasWord> sentence : untaggedSentences){
+                for(TaggedWord word : posTagger.tagSentence(sentence)){         //tag sentence
+                    if(allowedPos.contains(word.tag())){                        //filter sentence
+                        words.add(word.value());
+                    }
                 }
             }
+        }finally{
+            pool.release(posTagger);
         }
-        return filteredText;
     }
 }
@@ -0,0 +1,105 @@
+package fbrec.util;
+
+import edu.stanford.nlp.tagger.maxent.MaxentTagger;
+import fbrec.control.Config;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+
+/**
+ * Bounded pool of Stanford POS-Taggers shared by all requests.
+ * Loading the tagger model is expensive and a MaxentTagger instance must not
+ * be used by several threads at once, so taggers are created lazily up to the
+ * configured pool size and reused afterwards. If all taggers are in use
+ * the calling thread waits until one is released or the given time is over.
+ * @author Daniel
+ */
+public class PosTaggerPool {
+    private static volatile PosTaggerPool instance;                            //shared instance, created on first use
+
+    private final String                        modelFile;                      //model the taggers are loaded from
+    private final int                           maxSize;                        //maximal number of taggers
+    private final AtomicInteger                 size;                           //number of created taggers
+    private final BlockingQueue<MaxentTagger>   idle;                           //taggers currently not in use
+
+    private PosTaggerPool(String modelFile, int maxSize) {
+        this.modelFile  = modelFile;
+        this.maxSize    = maxSize;
+        this.size       = new AtomicInteger(0);
+        this.idle       = new LinkedBlockingQueue<MaxentTagger>();
+    }
+
+
+    /**
+     * Returns the shared pool for the configured model file
+     * @return
+     */
+    public static PosTaggerPool getInstance(){
+        PosTaggerPool result = instance;
+        if(result == null){
+            synchronized(PosTaggerPool.class){
+                result = instance;
+                if(result == null){
+                    result   = new PosTaggerPool(Config.get().POS_MODEL_FILE, Config.get().POS_TAGGER_POOL_SIZE);
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Takes a tagger from the pool. A new tagger is loaded when no idle tagger
+     * is available and the pool is not full yet, otherwise the method waits
+     * for a released tagger at most the given time.
+     * Each acquired tagger must be given back with {@link #release(MaxentTagger)}.
+     * @param timeout   time in ms to wait if all taggers are in use
+     * @return the tagger or null if no tagger was released in time
+     * @throws IOException
+     * @throws ClassNotFoundException
+     * @throws InterruptedException
+     */
+    public MaxentTagger acquire(long timeout) throws IOException, ClassNotFoundException, InterruptedException{
+        MaxentTagger tagger = idle.poll();
+        if(tagger != null) return tagger;
+
+        //try to create a new tagger
+        int current;
+        while((current = size.get()) < maxSize){
+            if(size.compareAndSet(current, current+1)){
+                boolean loaded = false;
+                try{
+                    tagger = load();
+                    loaded = true;
+                    return tagger;
+                }finally{
+                    if(!loaded) size.decrementAndGet();                         //free the slot on any failure, e.g. OutOfMemoryError
+                }
+            }
+        }
+
+        //pool is full, wait for a tagger
+        return idle.poll(timeout, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Gives the tagger back to the pool
+     * @param tagger
+     */
+    public void release(MaxentTagger tagger){
+        if(tagger != null) idle.offer(tagger);
+    }
+
+
+    private MaxentTagger load() throws IOException, ClassNotFoundException{
+        long start = System.currentTimeMillis();
+        MaxentTagger tagger = new MaxentTagger(modelFile);
+        Logger.getLogger(Config.EVENT_LOGGER).info("pos tagger "+size.get()+"/"+maxSize+" loaded in "+(System.currentTimeMillis()-start)+"ms");
+        return tagger;
+    }
+}
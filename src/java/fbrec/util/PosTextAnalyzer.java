@@ -0,0 +1,53 @@
+package fbrec.util;
+
+import fbrec.control.Deadline;
+import java.io.Reader;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+import org.apache.lucene.analysis.core.StopFilter;
+import org.apache.lucene.analysis.de.GermanNormalizationFilter;
+import org.apache.lucene.analysis.miscellaneous.LengthFilter;
+import org.apache.lucene.analysis.util.CharArraySet;
+import org.apache.lucene.util.Version;
+
+/**
+ * Analyzer emitting the words of a post with allowed POS-Tags (see {@link PosFilter}),
+ * without short words, stop words and names of friends of the user.
+ * An analyzer is created per profile, the tokenizer and filters are reused for
+ * all posts of the profile. A stream has to be consumed, ended and closed before
+ * the next post is analyzed.
+ * @author Daniel
+ */
+public final class PosTextAnalyzer extends Analyzer {
+    private final CharArraySet      stopWords;
+    private final String[]          allowedPos;                                 //allowed POS-Tags
+    private final CharArraySet      friendNames;                                //names of the friends of the user, removed
+    private final Deadline          deadline;                                   //time budget of the process
+
+    /**
+     * @param stopWords     words removed from the posts
+     * @param allowedPos    allowed POS-Tags according to Stuttgard - Tübingen-Tagset
+     * @param friendNames   names of the friends of the user, see {@link FriendsTokenFilter#names}
+     * @param deadline      time budget of the process, bounds the wait for a POS tagger
+     */
+    public PosTextAnalyzer(CharArraySet stopWords, String[] allowedPos, CharArraySet friendNames, Deadline deadline) {
+        this.stopWords   = stopWords;
+        this.allowedPos  = allowedPos;
+        this.friendNames = friendNames;
+        this.deadline    = deadline;
+    }
+
+
+    @Override
+    protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
+        Tokenizer   source      = new PosFilter(reader, allowedPos, deadline);
+        TokenStream tokenStream = new LengthFilter(true, source, 3, 100);                   //remove empty and single letter tokens
+        tokenStream = new LowerCaseFilter(Version.LUCENE_40, tokenStream);                  //lower case all tokens
+        tokenStream = new GermanNormalizationFilter(tokenStream);                           //apply german normalization (eg. ae vs ä)
+        tokenStream = new StopFilter(Version.LUCENE_40, tokenStream, stopWords);            //stop word filtering
+        tokenStream = new FriendsTokenFilter(tokenStream, friendNames);
+        return new TokenStreamComponents(source, tokenStream);
+    }
+}
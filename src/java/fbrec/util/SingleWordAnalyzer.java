@@ -0,0 +1,47 @@
+package fbrec.util;
+
+import java.io.Reader;
+import java.util.regex.Pattern;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+import org.apache.lucene.analysis.core.StopFilter;
+import org.apache.lucene.analysis.de.GermanNormalizationFilter;
+import org.apache.lucene.analysis.miscellaneous.LengthFilter;
+import org.apache.lucene.analysis.pattern.PatternReplaceFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.util.CharArraySet;
+import org.apache.lucene.util.Version;
+
+/**
+ * Analyzer splitting posts into single lower case words without numbers,
+ * short words and stop words.
+ * The tokenizer and filters are created once per thread and reused for every
+ * text, so a stream has to be consumed, ended and closed before the next text
+ * is analyzed in the same thread.
+ * @author Daniel
+ */
+public final class SingleWordAnalyzer extends Analyzer {
+    private static final Pattern    NUMBERS = Pattern.compile("[0-9]*");        //all numbers
+    private final CharArraySet      stopWords;
+
+    /**
+     * @param stopWords     words removed from the texts
+     */
+    public SingleWordAnalyzer(CharArraySet stopWords) {
+        this.stopWords = stopWords;
+    }
+
+
+    @Override
+    protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
+        Tokenizer   source      = new StandardTokenizer(Version.LUCENE_40, reader);
+        TokenStream tokenStream = new PatternReplaceFilter(source, NUMBERS, "", true);      //filter out all numbers
+        tokenStream = new LengthFilter(true, tokenStream, 3, 100);                          //remove empty and single letter tokens
+        tokenStream = new LowerCaseFilter(Version.LUCENE_40, tokenStream);                  //lower case all tokens
+        tokenStream = new GermanNormalizationFilter(tokenStream);                           //apply german normalization (eg. ae vs ä)
+        tokenStream = new StopFilter(Version.LUCENE_40, tokenStream, stopWords);            //stop word filtering
+        return new TokenStreamComponents(source, tokenStream);
+    }
+}
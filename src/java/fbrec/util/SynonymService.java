@@ -0,0 +1,175 @@
+package fbrec.util;
+
+import de.tuebingen.uni.sfs.germanet.api.GermaNet;
+import de.tuebingen.uni.sfs.germanet.api.Synset;
+import fbrec.control.Config;
+import fbrec.control.ConfigSnapshot;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.stream.XMLStreamException;
+import org.apache.log4j.Logger;
+
+/**
+ * Process-wide synonym lookup based on GermaNet.
+ * If a compiled snapshot (see {@link GermaNetSnapshotCompiler}) is configured
+ * it is memory mapped and used directly. Otherwise GermaNet is parsed only once,
+ * reduced to a read-only orthform -> orthforms map and released afterwards.
+ * Both variants can be shared by concurrent requests.
+ * @author Daniel
+ */
+public class SynonymService {
+    private static volatile SynonymService instance;                           //shared instance, created on first use
+
+    private final Map<String, List<String>> orthForms;                          //orthform -> all orthforms of its synsets (read-only)
+    private final GermaNetSnapshot          snapshot;                           //memory mapped snapshot, used instead of the map if available
+
+    private SynonymService(Map<String, List<String>> orthForms) {
+        this.orthForms = Collections.unmodifiableMap(orthForms);
+        this.snapshot  = null;
+    }
+
+    private SynonymService(GermaNetSnapshot snapshot) {
+        this.orthForms = null;
+        this.snapshot  = snapshot;
+    }
+
+
+    /**
+     * Returns the shared instance. When called for the first time the configured
+     * snapshot is opened, or GermaNet is loaded from the xml directory if there is no snapshot.
+     * @return
+     * @throws FileNotFoundException
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    public static SynonymService getInstance() throws FileNotFoundException, XMLStreamException, IOException{
+        SynonymService result = instance;
+        if(result == null){
+            synchronized(SynonymService.class){
+                result = instance;
+                if(result == null){
+                    result   = create();
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+
+    private static SynonymService create() throws FileNotFoundException, XMLStreamException, IOException{
+        ConfigSnapshot config = Config.get();
+        if(config.GERMANET_SNAPSHOT != null){
+            File file = Config.getFile(config.GERMANET_SNAPSHOT);
+            if(file.isFile()){
+                return open(file);
+            }
+            Logger.getLogger(Config.EVENT_LOGGER).warn("GermaNet snapshot "+file+" not found, loading xml files instead.");
+        }
+        return load(Config.getFile(config.GERMANET_DIR));
+    }
+
+
+    /**
+     * Opens the GermaNet snapshot file with given name.
+     * @param file  snapshot file created by GermaNetSnapshotCompiler
+     * @return
+     * @throws IOException
+     */
+    protected static SynonymService open(File file) throws IOException{
+        long start = System.currentTimeMillis();
+        GermaNetSnapshot snapshot = GermaNetSnapshot.open(file);
+        Logger.getLogger(Config.EVENT_LOGGER).info("GermaNet snapshot mapped: "+snapshot.size()+" orthforms in "+(System.currentTimeMillis()-start)+"ms");
+        return new SynonymService(snapshot);
+    }
+
+
+    /**
+     * Loads GermaNet from given directory and builds the lookup map.
+     * @param dir   directory containing the GermaNet xml files
+     * @return
+     * @throws FileNotFoundException
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    protected static SynonymService load(File dir) throws FileNotFoundException, XMLStreamException, IOException{
+        Logger.getLogger(Config.EVENT_LOGGER).info("loading GermaNet from "+dir+"...");
+        long    start       = System.currentTimeMillis();
+        long    heapBefore  = usedHeap();
+
+        GermaNet                        gnet    = new GermaNet(dir);
+        Map<String, Set<String>>        forms   = new HashMap<String, Set<String>>();
+        Map<String, List<String>>       result;
+        List<String>                    synsetForms;
+        Set<String>                     wordForms;
+
+        //collect all orthforms of all synsets a orthform occours in
+        for(Synset synset : gnet.getSynsets()){
+            synsetForms = synset.getAllOrthForms();
+            for(String form : synsetForms){
+                wordForms = forms.get(form);
+                if(wordForms == null){
+                    wordForms = new LinkedHashSet<String>();
+                    forms.put(form, wordForms);
+                }
+                wordForms.addAll(synsetForms);
+            }
+        }
+        gnet = null;                                                            //object graph of GermaNet is not needed anymore
+
+        //convert to compact read-only lists
+        result = new HashMap<String, List<String>>(forms.size()*4/3+1);
+        for(Map.Entry<String, Set<String>> entry : forms.entrySet()){
+            result.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<String>(entry.getValue())));
+        }
+        forms = null;
+
+        //logging
+        Logger.getLogger(Config.EVENT_LOGGER).info("GermaNet loaded: "+result.size()+" orthforms in "+(System.currentTimeMillis()-start)+"ms");
+        Logger.getLogger(Config.EVENT_LOGGER).info("GermaNet heap usage (approx.): "+(usedHeap()-heapBefore)/(1024*1024)+"MB");
+
+        return new SynonymService(result);
+    }
+
+
+    /**
+     * Returns all orthforms of all synsets containing the given orthform.
+     * The lookup is case sensitive. Returns an empty list when the orthform is unknown.
+     * @param orthForm
+     * @return read-only list of orthforms
+     */
+    public List<String> orthForms(String orthForm){
+        if(snapshot != null) return snapshot.orthForms(orthForm);
+        
+        List<String> result = orthForms.get(orthForm);
+        return (result != null) ? result : Collections.<String>emptyList();
+    }
+
+
+    /**
+     * Returns the number of orthforms known to the service
+     * @return
+     */
+    public int size(){
+        return (snapshot != null) ? snapshot.size() : orthForms.size();
+    }
+
+
+    /**
+     * Returns the currently used heap in bytes after requesting a garbage collection
+     * @return
+     */
+    private static long usedHeap(){
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
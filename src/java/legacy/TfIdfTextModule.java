@@ -50,6 +50,7 @@ public class TfIdfTextModule extends Module {
             tfidfMatrix     = new TfidfMatrix(postDocuments);                   //get tfidf matrix
             
             for(Doc doc : postDocuments){                                       //iterate through docs to determine top-terms
+                if(deadline.skip("top terms of remaining posts")) break;        //keep tags of the posts processed so far
                 topTerms = tfidfMatrix.topTerms(doc.ID, 2);                     //get top-terms
                 for(String tagText : topTerms){                                 //add top terms to tag-tree
                     tfidf = tfidfMatrix.tfidf(doc.ID, tagText);
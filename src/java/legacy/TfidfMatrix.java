@@ -1,127 +1,216 @@
 package legacy;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.HashMultimap;
+import fbrec.util.IntIntMap;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.util.CharArrayMap;
+import org.apache.lucene.util.Version;
 
 /**
- * Represents a TfidfMatrix which stores an tf-idf value for each term (string) 
+ * Represents a TfidfMatrix which stores an tf-idf value for each term (string)
  * in a document represented by a id (integer).
- * The matrix is created from a list of documents
+ * The matrix is created from a list of documents.
+ * Terms are replaced by ids from a term dictionary, the terms of a document are
+ * stored as one row of term ids and values in arrays shared by all documents
+ * (compressed sparse rows). Only the terms occouring in a document are stored.
  * @author Daniel
  */
 public class TfidfMatrix extends TermMatrix{
-    private HashBasedTable<Integer, String, Double> tfidfMatrix;                //result, matrix containing tfidf values for all term, document combinations
-    
+    private final CharArrayMap<Integer> termIds;                                //term => term id, looked up in the token buffer
+    private final List<String>          terms;                                  //term id => term
+    private final IntIntMap             rows;                                   //document id => row
+    private final int[]                 rowStart;                               //row => first entry of the row, last element is the number of entries
+    private int[]                       rowTerms;                               //entry => term id
+    private double[]                    values;                                 //entry => tf-idf value of the term in the document
+    private int[]                       df;                                     //term id => number of documents the term occours in
+
     /**
      * Creates a ne tfidf Matrix from a list of documents
-     * @param documents
-     * @throws IOException 
+     * @param documents     documents, the IDs have to be unique
+     * @throws IOException
      */
     public TfidfMatrix(List<Doc> documents) throws IOException{
         //vars for calculation
-        HashMultimap<String, Integer>   termDocMap;                             //term->documents map
-        TfMatrix                        tfMatrix;                               //term,document->tf matrix
-        int                             noOfDocsPerTerm;                        //no of documents a term occours in
-        int                             noOfDocs;                               //total no of documents
-        double                          tf;
-        double                          idf;                                    //idf value of a term
-        double                          tfidf;                                  //tfidf value of a term in a document
-       
+        int                 noOfDocs    = documents.size();                     //total no of documents
+        int                 noOfEntries = 0;                                    //no of entries in all rows
+        int[]               lastRow     = new int[64];                          //term id => last row containing the term + 1
+        int[]               entry       = new int[64];                          //term id => entry of the term in its last row
+        double[]            idf;                                                //term id => idf value
+        double              vectorSize;
+
         //temp vars
-        TokenStream  tokenStream;                                               //tokenStream holding tokens created form document
-        String       docText;                                                   //text of a document
-        String       token;                                                     //a token
-        Set<Integer> termDocs;                                                  //set of documents (IDs) containing a specific term
-        CharTermAttribute charTermAttribute;                                    //holds token text
-        
+        TokenStream         tokenStream;                                        //tokenStream holding tokens created form document
+        CharTermAttribute   charTermAttribute;                                  //holds token text
+        Integer             termId;
+        String              term;
+        int                 row;
+
         //init vars
-        tfidfMatrix = HashBasedTable.create();
-        tfMatrix    = new TfMatrix();
-        termDocMap  = HashMultimap.create();
-        noOfDocs    = documents.size();
-        
-        //calculate needed data
-        for(Doc doc : documents){                                               //iterate over documents
-            docText             = doc.text;                         
-            tokenStream         = tokenizeSingleWords(docText);                            //tokenize text
+        termIds     = new CharArrayMap<Integer>(Version.LUCENE_40, 256, false);
+        terms       = new ArrayList<String>();
+        rows        = new IntIntMap(noOfDocs);
+        rowStart    = new int[noOfDocs+1];
+        rowTerms    = new int[256];
+        values      = new double[256];
+        df          = new int[64];
+
+        //count terms per document
+        for(row = 0; row < noOfDocs; row++){                                    //iterate over documents
+            Doc doc = documents.get(row);
+            if(rows.get(doc.ID, -1) >= 0) throw new IllegalArgumentException("duplicate document id "+doc.ID);
+            rows.put(doc.ID, row);
+            rowStart[row]       = noOfEntries;
+
+            tokenStream         = tokenizeSingleWords(doc.text);                //tokenize text
             charTermAttribute   = tokenStream.addAttribute(CharTermAttribute.class); //get token text
             while(tokenStream.incrementToken()){                                //iterate over tokens
-                token       = charTermAttribute.toString();
-                termDocMap.put(token, doc.ID);
-                tfMatrix.increaseCount(doc.ID, token);
+                termId = termIds.get(charTermAttribute.buffer(), 0, charTermAttribute.length());
+                if(termId == null){                                             //new term => add to dictionary
+                    term   = charTermAttribute.toString();
+                    termId = terms.size();
+                    termIds.put(term, termId);
+                    terms.add(term);
+                    if(termId == df.length){
+                        df      = Arrays.copyOf(df, termId * 2);
+                        lastRow = Arrays.copyOf(lastRow, termId * 2);
+                        entry   = Arrays.copyOf(entry, termId * 2);
+                    }
+                }
+
+                if(lastRow[termId] == row+1){                                   //term occoured in document before
+                    values[entry[termId]]++;
+                }else{                                                          //first occourence in document => new entry
+                    if(noOfEntries == rowTerms.length){
+                        rowTerms = Arrays.copyOf(rowTerms, noOfEntries * 2);
+                        values   = Arrays.copyOf(values, noOfEntries * 2);
+                    }
+                    lastRow[termId]      = row+1;
+                    entry[termId]        = noOfEntries;
+                    rowTerms[noOfEntries] = termId;
+                    values[noOfEntries]  = 1.0;
+                    noOfEntries++;
+                    df[termId]++;
+                }
             }
+            tokenStream.end();
+            tokenStream.close();                                                //stream is reused for the next document
+        }
+        rowStart[noOfDocs] = noOfEntries;
+
+        //idf per term
+        idf = new double[terms.size()];
+        for(int t = 0; t < idf.length; t++){
+            idf[t] = Math.log( (double) noOfDocs / (double) df[t]);
         }
-        
-        tfMatrix.applyNormalisation();
-
-        //calculate tfidf matrix
-        for(String term : termDocMap.keySet()){                                 //iterate over terms
-            termDocs        = termDocMap.get(term);
-            noOfDocsPerTerm = termDocs.size();
-            idf             = Math.log( (double) noOfDocs / (double) noOfDocsPerTerm);
-            
-            for(int docID : termDocs){                                          //iterate over documents the current term occours in
-                tf      = tfMatrix.get(docID, term);
-                tfidf   = tf * idf; 
-                tfidfMatrix.put(docID, term, tfidf);
+
+        //apply cosine normalization to the term counts and multiply with idf
+        for(row = 0; row < noOfDocs; row++){
+            vectorSize = 0.0;
+            for(int e = rowStart[row]; e < rowStart[row+1]; e++){
+                vectorSize += values[e] * values[e];
+            }
+            vectorSize = Math.sqrt(vectorSize);
+
+            for(int e = rowStart[row]; e < rowStart[row+1]; e++){
+                values[e] = values[e] / vectorSize * idf[rowTerms[e]];
             }
         }
     }
-    
-    
+
+
     /**
      * Returns the tfidf value for given term in given document
      * @param docID
      * @param term
-     * @return 
+     * @return
      */
     public double tfidf(int docID, String term){
-        return (tfidfMatrix.contains(docID, term)) ? tfidfMatrix.get(docID, term) : 0;
+        int     row     = rows.get(docID, -1);
+        Integer termId  = termIds.get(term);
+        if(row < 0 || termId == null) return 0;
+
+        for(int e = rowStart[row]; e < rowStart[row+1]; e++){                  //rows are short, no index needed
+            if(rowTerms[e] == termId) return values[e];
+        }
+        return 0;
     }
-   
-    
+
+
     /**
      * Returns a specified number of top terms in the given document.
-     * Top terms are the n terms with the highest tf-idf value.
+     * Top terms are the n terms with the highest tf-idf value, in descending order.
+     * Terms with equal values are returned in the order of their first occourence.
      * @param docID
      * @param noOfTerms
-     * @return 
+     * @return
      */
     public List<String> topTerms(int docID, int noOfTerms){
-        //vars
-        List<String>        result      = new ArrayList<String>(noOfTerms);
-        Map<String, Double> docTerms    = new HashMap<String, Double>(tfidfMatrix.row(docID)); //new Hashmap needed because of removal during loop
-        
-        //temp vars
-        int     noOfDocTerms = docTerms.size(); //needed because size will change during selection process
-        String  max          = "";              //term with the current highest tfidf value
-        int     count        = 0;               //number of top-terms found
-        
-        while(count < noOfTerms && count < noOfDocTerms){   
-            max = "";
-            for(String term : docTerms.keySet()){                               //iterate over terms of the document
-                if(max.isEmpty()){                                              //if no max is defined => current term = new max
-                    max = term;
-                }
-                else{ 
-                    if(docTerms.get(term) > docTerms.get(max)){                 //if tfidf(currentTerm) > tfidf(max) => currenterm is new max
-                        max = term;
-                    }
-                }
+        int     row     = rows.get(docID, -1);
+        if(row < 0 || noOfTerms <= 0) return new ArrayList<String>(0);
+
+        //select the best entries with a heap bounded to noOfTerms, the worst entry is on top
+        int     start   = rowStart[row];
+        int     end     = rowStart[row+1];
+        int[]   heap    = new int[Math.min(noOfTerms, end-start)];
+        int     size    = 0;
+        for(int e = start; e < end; e++){
+            if(size < heap.length){
+                heap[size] = e;
+                siftUp(heap, size++);
+            }else if(worse(heap[0], e)){                                        //better than the worst selected entry
+                heap[0] = e;
+                siftDown(heap, 0, size);
             }
-            result.add(max);
-            docTerms.remove(max);
-            count++;
         }
-       
-       return result;
-   }
+
+        //remove worst entries first => fill from the end
+        String[] result = new String[size];
+        for(int i = size-1; i >= 0; i--){
+            result[i] = terms.get(rowTerms[heap[0]]);
+            heap[0]   = heap[i];
+            siftDown(heap, 0, i);
+        }
+        return new ArrayList<String>(Arrays.asList(result));
+    }
+
+
+    /**
+     * Returns true if entry a has a lower value than entry b or an equal value and occours later
+     */
+    private boolean worse(int a, int b){
+        return values[a] < values[b] || (values[a] == values[b] && a > b);
+    }
+
+
+    private void siftUp(int[] heap, int i){
+        int parent;
+        while(i > 0){
+            parent = (i-1) / 2;
+            if(!worse(heap[i], heap[parent])) break;
+            swap(heap, i, parent);
+            i = parent;
+        }
+    }
+
+
+    private void siftDown(int[] heap, int i, int size){
+        int child;
+        while((child = 2*i + 1) < size){
+            if(child+1 < size && worse(heap[child+1], heap[child])) child++;    //worse child
+            if(!worse(heap[child], heap[i])) break;
+            swap(heap, i, child);
+            i = child;
+        }
+    }
+
+
+    private static void swap(int[] heap, int i, int k){
+        int tmp = heap[i];
+        heap[i] = heap[k];
+        heap[k] = tmp;
+    }
 }